@@ -0,0 +1,12 @@
+package com.upgrade.campsiteavailability;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class CampsiteAvailabilityApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(CampsiteAvailabilityApplication.class, args);
+    }
+}
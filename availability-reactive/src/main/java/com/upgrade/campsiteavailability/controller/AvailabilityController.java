@@ -0,0 +1,88 @@
+package com.upgrade.campsiteavailability.controller;
+
+import com.upgrade.campsiteavailability.domain.Booking;
+import com.upgrade.campsiteavailability.exception.BadRequestException;
+import com.upgrade.campsiteavailability.exception.BookingNotFoundException;
+import com.upgrade.campsiteavailability.repository.BookingDateRepository;
+import com.upgrade.campsiteavailability.repository.BookingRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.MessageFormat;
+import java.time.LocalDate;
+import java.util.HashSet;
+
+/**
+ * Non-blocking variant of the read endpoints of the reservation service, on the same database: no thread and no
+ * connection is held while the database is queried.
+ */
+@RestController
+@Slf4j
+@AllArgsConstructor
+public class AvailabilityController {
+
+  @SuppressWarnings("java:S1075")
+  static final String BASE_BOOKING_PATH = "/bookings";
+
+  @SuppressWarnings("java:S1075")
+  static final String BASE_AVAILABLE_PATH = "/availabilities";
+
+  // The paths without campsite are the paths of the default campsite
+  @SuppressWarnings("java:S1075")
+  static final String BASE_CAMPSITE_PATH = "/campsites/{campsiteId}";
+
+  static final long DEFAULT_CAMPSITE_ID = 1;
+
+  private final BookingRepository bookingRepository;
+
+  private final BookingDateRepository bookingDateRepository;
+
+  @GetMapping(path = {BASE_BOOKING_PATH, BASE_CAMPSITE_PATH + BASE_BOOKING_PATH})
+  public Flux<Booking> getAllBookings(@PathVariable(required = false) Long campsiteId) {
+    return bookingRepository.findAllByCampsiteId(campsiteIdOrDefault(campsiteId), Sort.by("arrivalDate"));
+  }
+
+  @GetMapping(path = {BASE_BOOKING_PATH + "/{id}", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/{id}"})
+  public Mono<Booking> getBooking(@PathVariable(required = false) Long campsiteId, @PathVariable long id) {
+    return bookingRepository.findByCampsiteIdAndId(campsiteIdOrDefault(campsiteId), id)
+        .switchIfEmpty(Mono.error(() -> new BookingNotFoundException(id)));
+  }
+
+  /**
+   * Same parameters as the reservation service: the start date is included (default today), the end date is excluded
+   * (default start date + 1 month).
+   */
+  @GetMapping(path = {BASE_AVAILABLE_PATH, BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH})
+  public Flux<LocalDate> getBookingAvailabilities(@PathVariable(required = false) Long campsiteId,
+                                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                  @RequestParam(required = false)
+                                                  LocalDate startDate,
+                                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                  @RequestParam(required = false)
+                                                  LocalDate endDate) {
+    final var start = startDate == null ? LocalDate.now() : startDate;
+    final var end = endDate == null ? start.plusMonths(1) : endDate;
+    if (start.isAfter(end)) {
+      return Flux.error(new BadRequestException(
+          MessageFormat.format("Start date {0} is after end date {1}", start, end)));
+    }
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    log.info("Get availabilities of the campsite {} between {} and {}", campsite, start, end);
+    return bookingDateRepository.findReservedDatesBetween(campsite, start, end)
+        .collect(HashSet<LocalDate>::new, HashSet::add)
+        .flatMapMany(reservedDates -> Flux.fromStream(start.datesUntil(end))
+            .filter(date -> !reservedDates.contains(date)));
+  }
+
+  private static long campsiteIdOrDefault(Long campsiteId) {
+    return campsiteId == null ? DEFAULT_CAMPSITE_ID : campsiteId;
+  }
+}
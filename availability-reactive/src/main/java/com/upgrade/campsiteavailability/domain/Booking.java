@@ -0,0 +1,29 @@
+package com.upgrade.campsiteavailability.domain;
+
+import lombok.Value;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDate;
+
+/**
+ * A booking, read from the table of the {@code BookingDto} entity of the reservation service. The JSON is the same
+ * as the {@code Booking} of the reservation service.
+ */
+@Value
+@Table("booking")
+public class Booking {
+
+  String email;
+
+  String fullName;
+
+  LocalDate arrivalDate;
+
+  LocalDate departureDate;
+
+  @Id
+  long id;
+
+  long campsiteId;
+}
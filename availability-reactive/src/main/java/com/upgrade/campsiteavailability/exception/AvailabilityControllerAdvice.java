@@ -0,0 +1,51 @@
+package com.upgrade.campsiteavailability.exception;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ServerWebInputException;
+
+/**
+ * Same error responses as the reservation service.
+ */
+@RestControllerAdvice
+public class AvailabilityControllerAdvice {
+
+  @ExceptionHandler(BadRequestException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  ErrorResponse badRequestHandler(BadRequestException e) {
+    return errorResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+  }
+
+  /**
+   * Error when parsing LocalDate as a request parameter
+   */
+  @ExceptionHandler(ServerWebInputException.class)
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  ErrorResponse inputHandler(ServerWebInputException e) {
+    return errorResponse(HttpStatus.BAD_REQUEST, e.getReason());
+  }
+
+  @ExceptionHandler(BookingNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  ErrorResponse notFoundHandler(BookingNotFoundException e) {
+    return errorResponse(HttpStatus.NOT_FOUND, e.getMessage());
+  }
+
+  private static ErrorResponse errorResponse(HttpStatus status, String message) {
+    return ErrorResponse.builder()
+        .status(status)
+        .message(message)
+        .build();
+  }
+
+  @Value
+  @Builder
+  static class ErrorResponse {
+    HttpStatus status;
+    String message;
+  }
+}
@@ -0,0 +1,7 @@
+package com.upgrade.campsiteavailability.exception;
+
+public class BookingNotFoundException extends RuntimeException {
+  public BookingNotFoundException(long id) {
+    super("Could not find booking with id " + id);
+  }
+}
@@ -0,0 +1,36 @@
+package com.upgrade.campsiteavailability.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+/**
+ * Reads the reserved (booked or held) dates from the table of the {@code BookingDateDto} entity of the reservation
+ * service, and the sold out days of the inventory campsites from the table of the {@code DailyInventoryDto} entity.
+ */
+@Repository
+public class BookingDateRepository {
+
+  private final DatabaseClient databaseClient;
+
+  public BookingDateRepository(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  // 2 ranges of the primary keys (campsite_id, date): the booking dates of an inventory campsite are counted in its
+  // inventory, not inserted, so its reserved dates are the days without remaining pitch
+  public Flux<LocalDate> findReservedDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    return databaseClient.sql("select date from booking_date_dto"
+            + " where campsite_id = :campsiteId and date >= :start and date < :end"
+            + " union all select date from daily_inventory_dto"
+            + " where campsite_id = :campsiteId and date >= :start and date < :end and remaining = 0"
+            + " order by date")
+        .bind("campsiteId", campsiteId)
+        .bind("start", startInclusive)
+        .bind("end", endExclusive)
+        .map(row -> row.get("date", LocalDate.class))
+        .all();
+  }
+}
@@ -0,0 +1,16 @@
+package com.upgrade.campsiteavailability.repository;
+
+import com.upgrade.campsiteavailability.domain.Booking;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.reactive.ReactiveSortingRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface BookingRepository extends ReactiveSortingRepository<Booking, Long> {
+
+  Flux<Booking> findAllByCampsiteId(long campsiteId, Sort sort);
+
+  Mono<Booking> findByCampsiteIdAndId(long campsiteId, long id);
+}
@@ -0,0 +1,157 @@
+package com.upgrade.campsiteavailability.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.upgrade.campsiteavailability.controller.AvailabilityController.BASE_AVAILABLE_PATH;
+import static com.upgrade.campsiteavailability.controller.AvailabilityController.BASE_BOOKING_PATH;
+import static com.upgrade.campsiteavailability.controller.AvailabilityController.BASE_CAMPSITE_PATH;
+
+/**
+ * Test the {@link AvailabilityController}.
+ * <p>This test class uses the h2 in-memory database, with the schema of the reservation service.</p>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AvailabilityControllerTest {
+
+  private static final LocalDate ARRIVAL_DATE = LocalDate.now().plusDays(1);
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private DatabaseClient databaseClient;
+
+  @BeforeEach
+  void setUp() {
+    execute("delete from booking_date_dto");
+    execute("delete from daily_inventory_dto");
+    execute("delete from booking");
+    execute("insert into booking values (2, 0, 1, 'other@upgrade.com', 'Other', '" + ARRIVAL_DATE.plusDays(5)
+        + "', '" + ARRIVAL_DATE.plusDays(6) + "')");
+    execute("insert into booking values (1, 0, 1, 'test@upgrade.com', 'Test', '" + ARRIVAL_DATE + "', '"
+        + ARRIVAL_DATE.plusDays(2) + "')");
+    execute("insert into booking values (3, 0, 2, 'site2@upgrade.com', 'Site 2', '" + ARRIVAL_DATE + "', '"
+        + ARRIVAL_DATE.plusDays(1) + "')");
+    execute("insert into booking_date_dto (campsite_id, date, booking_id) values (1, '" + ARRIVAL_DATE + "', 1)");
+    execute("insert into booking_date_dto (campsite_id, date, booking_id) values (1, '" + ARRIVAL_DATE.plusDays(1)
+        + "', 1)");
+    execute("insert into booking_date_dto (campsite_id, date, booking_id) values (1, '" + ARRIVAL_DATE.plusDays(5)
+        + "', 2)");
+    execute("insert into booking_date_dto (campsite_id, date, booking_id, hold_id, held_until) values (1, '"
+        + ARRIVAL_DATE.plusDays(3) + "', 0, 'hold', '" + Instant.now().plusSeconds(600) + "')");
+    execute("insert into booking_date_dto (campsite_id, date, booking_id) values (2, '" + ARRIVAL_DATE + "', 3)");
+    // The campsite 3 has an inventory of pitches
+    execute("insert into daily_inventory_dto values (3, '" + ARRIVAL_DATE + "', 1)");
+    execute("insert into daily_inventory_dto values (3, '" + ARRIVAL_DATE.plusDays(1) + "', 0)");
+    execute("insert into daily_inventory_dto values (3, '" + ARRIVAL_DATE.plusDays(2) + "', 2)");
+  }
+
+  @Test
+  void getBooking() {
+    webTestClient.get().uri(BASE_BOOKING_PATH + "/1")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.id").isEqualTo(1)
+        .jsonPath("$.email").isEqualTo("test@upgrade.com")
+        .jsonPath("$.fullName").isEqualTo("Test")
+        .jsonPath("$.arrivalDate").isEqualTo(ARRIVAL_DATE.toString())
+        .jsonPath("$.departureDate").isEqualTo(ARRIVAL_DATE.plusDays(2).toString());
+  }
+
+  @Test
+  void getBooking_otherCampsite() {
+    webTestClient.get().uri(BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/1", 2)
+        .exchange()
+        .expectStatus().isNotFound()
+        .expectBody()
+        .jsonPath("$.message").isEqualTo("Could not find booking with id 1");
+  }
+
+  @Test
+  void getBooking_notFound() {
+    webTestClient.get().uri(BASE_BOOKING_PATH + "/3")
+        .exchange()
+        .expectStatus().isNotFound()
+        .expectBody()
+        .jsonPath("$.message").isEqualTo("Could not find booking with id 3");
+  }
+
+  @Test
+  void getAllBookings() {
+    webTestClient.get().uri(BASE_BOOKING_PATH)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(2)
+        .jsonPath("$[0].id").isEqualTo(1)
+        .jsonPath("$[1].id").isEqualTo(2);
+  }
+
+  @Test
+  void getAllBookings_campsite() {
+    webTestClient.get().uri(BASE_CAMPSITE_PATH + BASE_BOOKING_PATH, 2)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(1)
+        .jsonPath("$[0].id").isEqualTo(3)
+        .jsonPath("$[0].campsiteId").isEqualTo(2);
+  }
+
+  @Test
+  void getBookingAvailabilities() {
+    webTestClient.get().uri(BASE_AVAILABLE_PATH + "?startDate={start}&endDate={end}",
+            ARRIVAL_DATE, ARRIVAL_DATE.plusDays(7))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(LocalDate.class)
+        // The booked and held dates are not available
+        .isEqualTo(List.of(ARRIVAL_DATE.plusDays(2), ARRIVAL_DATE.plusDays(4), ARRIVAL_DATE.plusDays(6)));
+  }
+
+  @Test
+  void getBookingAvailabilities_campsite() {
+    webTestClient.get().uri(BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH + "?startDate={start}&endDate={end}",
+            2, ARRIVAL_DATE, ARRIVAL_DATE.plusDays(3))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(LocalDate.class)
+        .isEqualTo(List.of(ARRIVAL_DATE.plusDays(1), ARRIVAL_DATE.plusDays(2)));
+  }
+
+  @Test
+  void getBookingAvailabilities_inventory() {
+    webTestClient.get().uri(BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH + "?startDate={start}&endDate={end}",
+            3, ARRIVAL_DATE, ARRIVAL_DATE.plusDays(3))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(LocalDate.class)
+        // The sold out days are not available
+        .isEqualTo(List.of(ARRIVAL_DATE, ARRIVAL_DATE.plusDays(2)));
+  }
+
+  @Test
+  void getBookingAvailabilities_startAfterEnd() {
+    webTestClient.get().uri(BASE_AVAILABLE_PATH + "?startDate={start}&endDate={end}",
+            ARRIVAL_DATE.plusDays(1), ARRIVAL_DATE)
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .jsonPath("$.message").isEqualTo("Start date " + ARRIVAL_DATE.plusDays(1) + " is after end date "
+            + ARRIVAL_DATE);
+  }
+
+  private void execute(String sql) {
+    databaseClient.sql(sql).then().block();
+  }
+}
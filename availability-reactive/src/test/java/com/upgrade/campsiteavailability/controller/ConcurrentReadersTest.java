@@ -0,0 +1,132 @@
+package com.upgrade.campsiteavailability.controller;
+
+import com.upgrade.campsiteavailability.CampsiteAvailabilityApplication;
+import com.upgrade.volcanocampsitereservation.VolcanoCampsiteReservationApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.upgrade.campsiteavailability.controller.AvailabilityController.BASE_AVAILABLE_PATH;
+import static com.upgrade.campsiteavailability.controller.AvailabilityController.BASE_BOOKING_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the concurrent readers served by the Spring MVC and JPA application and by this application, on the same
+ * h2 in-memory database.
+ * <p>The availability index of the Spring MVC application is disabled and its admission control too, so both
+ * applications query the database for every request.</p>
+ * <p>A benchmark (run with {@code ./gradlew :availability-reactive:benchmark}): the timings depend on the machine, so
+ * they are logged and not compared.</p>
+ */
+@Tag("benchmark")
+@Slf4j
+class ConcurrentReadersTest {
+
+  private static final int READERS = 1000;
+
+  private static final int ROUNDS = 3;
+
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+
+  @Test
+  void concurrentReaders() throws Exception {
+    try (var mvcContext = startMvc();
+         var reactiveContext = startReactive()) {
+      final var mvcUrl = baseUrl(mvcContext);
+      final var reactiveUrl = baseUrl(reactiveContext);
+      addBooking(mvcUrl);
+
+      // The last round is measured, after the warm-up of both applications
+      for (int i = 0; i < ROUNDS; i++) {
+        measure("Spring MVC and JPA", mvcUrl);
+        measure("WebFlux and R2DBC", reactiveUrl);
+      }
+      assertThat(get(reactiveUrl + BASE_AVAILABLE_PATH).body())
+          .isEqualTo(get(mvcUrl + BASE_AVAILABLE_PATH).body());
+    }
+  }
+
+  private void measure(String name, String baseUrl) throws Exception {
+    final var latencies = new long[READERS];
+    final var statuses = new int[READERS];
+    final var reads = new ArrayList<CompletableFuture<Void>>();
+    final var start = System.nanoTime();
+    for (int i = 0; i < READERS; i++) {
+      final var index = i;
+      final var sentAt = System.nanoTime();
+      reads.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + BASE_AVAILABLE_PATH)).build(),
+              HttpResponse.BodyHandlers.discarding())
+          .thenAccept(response -> {
+            latencies[index] = System.nanoTime() - sentAt;
+            statuses[index] = response.statusCode();
+          }));
+    }
+    CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+    final var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    Arrays.sort(latencies);
+    log.info("{}: {} concurrent reads in {} ms ({} reads/s), p99 latency {} ms", name, READERS, elapsedMillis,
+        READERS * 1000L / Math.max(elapsedMillis, 1),
+        TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(READERS * 0.99) - 1]));
+    assertThat(statuses).containsOnly(200);
+  }
+
+  private void addBooking(String baseUrl) throws Exception {
+    final var arrivalDate = LocalDate.now().plusDays(2);
+    final var response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + BASE_BOOKING_PATH))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"test@upgrade.com\",\"fullName\":\"Test\","
+            + "\"arrivalDate\":\"" + arrivalDate + "\",\"departureDate\":\"" + arrivalDate.plusDays(2) + "\"}"))
+        .build(), HttpResponse.BodyHandlers.ofString());
+    assertThat(response.statusCode()).isEqualTo(200);
+  }
+
+  private HttpResponse<String> get(String url) throws Exception {
+    return httpClient.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static String baseUrl(ConfigurableApplicationContext context) {
+    return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+  }
+
+  /**
+   * The properties are command line arguments, to override the application.yml of this module.
+   */
+  private static ConfigurableApplicationContext startMvc() {
+    return new SpringApplicationBuilder(VolcanoCampsiteReservationApplication.class)
+        .run("--server.port=0",
+            "--spring.main.web-application-type=servlet",
+            "--spring.datasource.url=jdbc:h2:mem:readers;DB_CLOSE_DELAY=-1",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=sa",
+            "--spring.sql.init.mode=never",
+            "--spring.autoconfigure.exclude="
+                + "org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration,"
+                + "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration,"
+                + "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration,"
+                + "org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration",
+            "--campsite.availability-index-enabled=false",
+            "--campsite.admission-control-enabled=false");
+  }
+
+  private static ConfigurableApplicationContext startReactive() {
+    return new SpringApplicationBuilder(CampsiteAvailabilityApplication.class)
+        .run("--server.port=0",
+            "--spring.r2dbc.url=r2dbc:h2:mem:///readers",
+            // The schema is created by the Spring MVC application
+            "--spring.sql.init.mode=never");
+  }
+}
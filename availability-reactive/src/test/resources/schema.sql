@@ -0,0 +1,26 @@
+-- Schema generated by the reservation service (See BookingDto, BookingDateDto and DailyInventoryDto)
+create table if not exists booking (
+  id bigint primary key,
+  version bigint not null,
+  campsite_id bigint not null,
+  email varchar(255),
+  full_name varchar(255),
+  arrival_date date,
+  departure_date date
+);
+
+create table if not exists booking_date_dto (
+  campsite_id bigint not null,
+  date date not null,
+  booking_id bigint not null,
+  hold_id varchar(255),
+  held_until timestamp,
+  primary key (campsite_id, date)
+);
+
+create table if not exists daily_inventory_dto (
+  campsite_id bigint not null,
+  date date not null,
+  remaining integer not null,
+  primary key (campsite_id, date)
+);
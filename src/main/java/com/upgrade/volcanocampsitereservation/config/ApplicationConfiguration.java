@@ -1,10 +1,15 @@
 package com.upgrade.volcanocampsitereservation.config;
 
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
 @ConfigurationProperties(prefix = "campsite")
 @Configuration
 @Getter
@@ -13,4 +18,60 @@ public class ApplicationConfiguration {
   private long maxReservedDays;
   private long minDaysAheadOfArrival;
   private long reservationMaxDaysInAdvance;
+  private int batchMaxSize = 500;
+  private int bookingsPageSize = 100;
+  private int bookingsMaxPageSize = 1000;
+  private int exportFetchSize = 500;
+  private boolean availabilityIndexEnabled = true;
+  private boolean conflictPrecheckEnabled = true;
+  private int availabilityStreamMaxConnections = 1000;
+  private int availabilityStreamBufferSize = 32;
+  private int availabilityStreamSenderThreads = 4;
+  private Duration availabilityStreamTimeout = Duration.ofMinutes(30);
+  private boolean changeLogEnabled;
+  private Duration changeLogPollInterval = Duration.ofMillis(500);
+  private int changeLogBatchSize = 500;
+  private Duration changeLogGapTimeout = Duration.ofSeconds(5);
+  private Duration changeLogRetention = Duration.ofDays(1);
+  private ConcurrencyStrategy concurrencyStrategy = ConcurrencyStrategy.SERIALIZABLE;
+  private int dateLockStripes = 1024;
+  private Duration dateLockTimeout = Duration.ofSeconds(5);
+  private int retryMaxAttempts = 5;
+  private Duration retryInitialBackoff = Duration.ofMillis(10);
+  private Duration retryMaxBackoff = Duration.ofMillis(200);
+  private Duration retryTimeBudget = Duration.ofSeconds(2);
+  private int idempotencyCacheSize = 10000;
+  private Duration idempotencyKeyRetention = Duration.ofDays(1);
+  private Duration idempotencyWaitTimeout = Duration.ofSeconds(10);
+  private boolean admissionControlEnabled = true;
+  private int admissionWriteMaxConcurrent = 8;
+  private int admissionWriteQueueSize = 100;
+  private Duration admissionWriteQueueTimeout = Duration.ofSeconds(2);
+  private int admissionReadMaxConcurrent = 64;
+  private int admissionReadQueueSize = 200;
+  private Duration admissionReadQueueTimeout = Duration.ofSeconds(1);
+  private Duration holdTtl = Duration.ofMinutes(10);
+  private Duration holdSweepInterval = Duration.ofMinutes(1);
+  private boolean virtualThreads;
+  private Set<Long> campsiteIds = Set.of(BookingDto.DEFAULT_CAMPSITE_ID);
+  private Map<Long, Integer> capacities = Map.of();
+  private Duration inventoryProvisionInterval = Duration.ofHours(1);
+  private Duration orphanDateCheckInterval = Duration.ofMinutes(10);
+  private int emailCacheSize = 10000;
+  private Duration emailCacheTtl = Duration.ofMinutes(10);
+  // Default: see getBookingCacheMode()
+  private BookingCacheMode bookingCacheMode;
+  private int bookingCacheSize = 10000;
+  private Duration bookingCacheTtl = Duration.ofMinutes(10);
+
+  /**
+   * Returns the configured mode of the cache of the bookings by id. By default {@link BookingCacheMode#VALIDATED}
+   * when the change log is enabled (multiple replicas), {@link BookingCacheMode#LOCAL} otherwise.
+   */
+  public BookingCacheMode getBookingCacheMode() {
+    if (bookingCacheMode != null) {
+      return bookingCacheMode;
+    }
+    return changeLogEnabled ? BookingCacheMode.VALIDATED : BookingCacheMode.LOCAL;
+  }
 }
@@ -0,0 +1,22 @@
+package com.upgrade.volcanocampsitereservation.config;
+
+/**
+ * Mode of the cache of the bookings by id used by the {@code BookingService} (See {@code BookingCache}).
+ */
+public enum BookingCacheMode {
+  /**
+   * Every lookup reads the booking from the database.
+   */
+  DISABLED,
+  /**
+   * A cached booking is returned without a query, and evicted after the commit of its changes on this replica. The
+   * changes of the other replicas are only seen after {@code campsite.booking-cache-ttl}. Only consistent with a
+   * single replica: the application does not start with this mode and {@code campsite.change-log-enabled}.
+   */
+  LOCAL,
+  /**
+   * The version of a cached booking is checked with 1 query of the version column before it is returned: the entity
+   * is not loaded when it did not change. Works with multiple replicas.
+   */
+  VALIDATED
+}
@@ -0,0 +1,19 @@
+package com.upgrade.volcanocampsitereservation.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/**
+ * The clock of "today" in the booking rules (See {@code BookingRuleEngine}), replaced by a fixed or offset clock in
+ * the tests.
+ */
+@Configuration
+public class ClockConfiguration {
+
+  @Bean
+  public Clock clock() {
+    return Clock.systemDefaultZone();
+  }
+}
@@ -0,0 +1,22 @@
+package com.upgrade.volcanocampsitereservation.config;
+
+/**
+ * Strategy used by the {@code BookingService} to protect the booking dates against concurrent reservations.
+ */
+public enum ConcurrencyStrategy {
+  /**
+   * SERIALIZABLE transaction with a pessimistic lock (select for update) on the booking dates.
+   * Works with multiple replicas.
+   */
+  SERIALIZABLE,
+  /**
+   * In-process striped locks on the epoch days of the booking, with a READ_COMMITTED transaction.
+   * Only works with a single replica.
+   */
+  STRIPED_LOCK,
+  /**
+   * No lock and no check before inserting the booking dates in a READ_COMMITTED transaction: the primary key of the
+   * booking dates rejects the dates that are already reserved. Works with multiple replicas.
+   */
+  INSERT_FIRST
+}
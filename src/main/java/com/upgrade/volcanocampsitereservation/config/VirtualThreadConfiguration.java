@@ -0,0 +1,36 @@
+package com.upgrade.volcanocampsitereservation.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the requests (and the booking transactions, which run on the request thread) on virtual threads instead of
+ * the Tomcat thread pool, so that the requests blocked on the booking locks do not exhaust the threads.
+ * <p>The concurrency is then limited by the admission control and the database connection pool, not by
+ * {@code server.tomcat.threads.max}.</p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "campsite", name = "virtual-threads", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfiguration {
+
+  // Closed with the application context: waits for the requests in progress
+  @Bean(destroyMethod = "close")
+  public ExecutorService virtualThreadExecutor() {
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer(ExecutorService virtualThreadExecutor) {
+    return protocolHandler -> {
+      log.info("Executing the requests on virtual threads");
+      protocolHandler.setExecutor(virtualThreadExecutor);
+    };
+  }
+}
@@ -0,0 +1,35 @@
+package com.upgrade.volcanocampsitereservation.config;
+
+import com.upgrade.volcanocampsitereservation.controller.AdmissionControlInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final ObjectProvider<AdmissionControlInterceptor> admissionControlInterceptor;
+
+  public WebConfiguration(ApplicationConfiguration rsvpConfig,
+                          ObjectProvider<AdmissionControlInterceptor> admissionControlInterceptor) {
+    this.rsvpConfig = rsvpConfig;
+    this.admissionControlInterceptor = admissionControlInterceptor;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    if (rsvpConfig.isAdmissionControlEnabled()) {
+      // The availability stream is long-lived, and limited by campsite.availability-stream-max-connections.
+      // The export streams every booking and would hold a read permit for its whole duration: it is read from a
+      // single transaction, outside of the bulkheads
+      registry.addInterceptor(admissionControlInterceptor.getObject())
+          .addPathPatterns("/bookings", "/bookings/**", "/holds", "/holds/**", "/availabilities",
+              "/campsites/*/bookings", "/campsites/*/bookings/**", "/campsites/*/holds", "/campsites/*/holds/**",
+              "/campsites/*/availabilities")
+          .excludePathPatterns("/bookings/export", "/campsites/*/bookings/export");
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.upgrade.volcanocampsitereservation.controller;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.service.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admission control of the booking API: the write requests (POST, PUT, DELETE) and the read requests go through
+ * separate {@link Bulkhead}s, so the reads stay fast while the writes are queued on the database locks.
+ * <p>A rejected request gets a 503 SERVICE_UNAVAILABLE response with a Retry-After header.</p>
+ */
+@Component
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+  private static final String BULKHEAD_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".bulkhead";
+
+  private final Bulkhead writeBulkhead;
+
+  private final Bulkhead readBulkhead;
+
+  public AdmissionControlInterceptor(ApplicationConfiguration rsvpConfig, MeterRegistry meterRegistry) {
+    this.writeBulkhead = new Bulkhead("write", rsvpConfig.getAdmissionWriteMaxConcurrent(),
+        rsvpConfig.getAdmissionWriteQueueSize(), rsvpConfig.getAdmissionWriteQueueTimeout(), meterRegistry);
+    this.readBulkhead = new Bulkhead("read", rsvpConfig.getAdmissionReadMaxConcurrent(),
+        rsvpConfig.getAdmissionReadQueueSize(), rsvpConfig.getAdmissionReadQueueTimeout(), meterRegistry);
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    final var bulkhead = isRead(request) ? readBulkhead : writeBulkhead;
+    bulkhead.acquire();
+    request.setAttribute(BULKHEAD_ATTRIBUTE, bulkhead);
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                              Exception ex) {
+    final var bulkhead = (Bulkhead) request.getAttribute(BULKHEAD_ATTRIBUTE);
+    if (bulkhead != null) {
+      request.removeAttribute(BULKHEAD_ATTRIBUTE);
+      bulkhead.release();
+    }
+  }
+
+  private static boolean isRead(HttpServletRequest request) {
+    final var method = HttpMethod.resolve(request.getMethod());
+    return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+  }
+}
@@ -1,11 +1,25 @@
 package com.upgrade.volcanocampsitereservation.controller;
 
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
+import com.upgrade.volcanocampsitereservation.domain.BatchBookingResult;
 import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.BookingCursor;
+import com.upgrade.volcanocampsitereservation.domain.BookingFilter;
+import com.upgrade.volcanocampsitereservation.domain.Hold;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.service.AvailabilityStreamService;
 import com.upgrade.volcanocampsitereservation.service.BookingService;
+import com.upgrade.volcanocampsitereservation.service.EmailLookupService;
+import com.upgrade.volcanocampsitereservation.service.HoldService;
+import com.upgrade.volcanocampsitereservation.service.IdempotencyService;
+import com.upgrade.volcanocampsitereservation.service.ReservationStateVersion;
 import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
 import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
 import com.upgrade.volcanocampsitereservation.exception.BookingNotFoundException;
+import com.upgrade.volcanocampsitereservation.exception.CampsiteNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,16 +28,32 @@ import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.MessageFormat;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 @RestController
 @Slf4j
@@ -42,28 +72,184 @@ public class BookingController {
   @SuppressWarnings("java:S1075")
   static final String BASE_AVAILABLE_PATH = "/availabilities";
 
+  @SuppressWarnings("java:S1075")
+  static final String BASE_HOLD_PATH = "/holds";
+
+  // Prefix of the paths of a campsite, the paths without prefix are the paths of the default campsite
+  @SuppressWarnings("java:S1075")
+  static final String BASE_CAMPSITE_PATH = "/campsites/{campsiteId}";
+
+  private static final String CAMPSITE_ID_DESCRIPTION = "Id of the campsite, default is "
+      + BookingDto.DEFAULT_CAMPSITE_ID;
+
+  static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+  static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+  private static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
+
   private final BookingService bookingService;
 
-  @Operation(summary = "Get the list of all booked reservations.")
-  @GetMapping(path = BASE_BOOKING_PATH)
-  public Stream<Booking> getAllBookings() {
-    return bookingService.findAll()
-        .stream()
-        .map(Booking::createFrom);
+  private final IdempotencyService idempotencyService;
+
+  private final HoldService holdService;
+
+  private final EmailLookupService emailLookupService;
+
+  private final ReservationStateVersion reservationStateVersion;
+
+  private final AvailabilityStreamService availabilityStreamService;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final Validator validator;
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Returns a page of the bookings in the order (arrivalDate, id). When there is a next page, its URL is returned in
+   * the header {@code Link: <...>; rel="next"}, with the cursor of the last booking of the page.
+   */
+  @Operation(summary = "Get the booked reservations by pages, sorted by arrival date.")
+  @GetMapping(path = {BASE_BOOKING_PATH, BASE_CAMPSITE_PATH + BASE_BOOKING_PATH})
+  public ResponseEntity<List<Booking>> getAllBookings(@PathVariable(required = false)
+                                                      @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                                      Long campsiteId,
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Arrival date from, included")
+                                                      LocalDate arrivalFrom,
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Arrival date to, excluded")
+                                                      LocalDate arrivalTo,
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Departure date from, included")
+                                                      LocalDate departureFrom,
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Departure date to, excluded")
+                                                      LocalDate departureTo,
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Cursor of the page, returned in the"
+                                                          + " Link header of the previous page")
+                                                      String after,
+                                                      @RequestParam(required = false)
+                                                      @Parameter(description = "Number of bookings of the page,"
+                                                          + " default is campsite.bookings-page-size")
+                                                      Integer size) {
+    final var pageSize = size == null ? rsvpConfig.getBookingsPageSize() : size;
+    if (pageSize < 1 || pageSize > rsvpConfig.getBookingsMaxPageSize()) {
+      throw new BadRequestException("The size of a page is between 1 and " + rsvpConfig.getBookingsMaxPageSize());
+    }
+    final var filter = BookingFilter.builder()
+        .arrivalFrom(arrivalFrom)
+        .arrivalTo(arrivalTo)
+        .departureFrom(departureFrom)
+        .departureTo(departureTo)
+        .build();
+    final var page = bookingService.findAll(campsiteIdOrDefault(campsiteId), filter,
+        after == null ? null : BookingCursor.decode(after), pageSize);
+    final var response = ResponseEntity.ok();
+    if (page.hasNext()) {
+      final var last = page.getContent().get(page.getNumberOfElements() - 1);
+      final var next = ServletUriComponentsBuilder.fromCurrentRequest()
+          .replaceQueryParam("after", new BookingCursor(last.getArrivalDate(), last.getId()).encode())
+          .toUriString();
+      response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    }
+    return response.body(page.getContent());
   }
 
-  @Operation(summary = "Get the information of a specific reservation with a given id.")
-  @GetMapping(path = BASE_BOOKING_PATH + "/{id}")
-  public Booking getBooking(@PathVariable long id) {
-    return bookingService.findById(id)
+  @Operation(summary = "Get the booked reservations of an email, sorted by arrival date.")
+  @GetMapping(path = {BASE_BOOKING_PATH + "/search", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/search"})
+  public List<Booking> searchBookings(@PathVariable(required = false)
+                                      @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                      Long campsiteId,
+                                      @RequestParam
+                                      @Parameter(description = "Email of the bookings")
+                                      String email) {
+    if (email.isBlank()) {
+      throw new BadRequestException("The email is required");
+    }
+    return emailLookupService.findAllByEmail(campsiteIdOrDefault(campsiteId), email).stream()
         .map(Booking::createFrom)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Writes every booking of the campsite as 1 JSON line, in the order (arrivalDate, id). Each booking is written to
+   * the response as it is read from the database, so the client can process the first lines before the end of the
+   * query.
+   */
+  @Operation(summary = "Export all the booked reservations as newline-delimited JSON.")
+  @GetMapping(path = {BASE_BOOKING_PATH + "/export", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/export"},
+      produces = NDJSON_MEDIA_TYPE)
+  public void exportBookings(@PathVariable(required = false)
+                             @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                             Long campsiteId,
+                             HttpServletResponse response) throws IOException {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    response.setContentType(NDJSON_MEDIA_TYPE);
+    // The response buffer is sent when it is full, not after every booking
+    final var writer = objectMapper.writerFor(Booking.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    try (var generator = objectMapper.createGenerator(response.getOutputStream())) {
+      generator.setRootValueSeparator(null);
+      bookingService.exportAll(campsite, booking -> {
+        try {
+          writer.writeValue(generator, booking);
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  /**
+   * The ETag of a booking is "{id}-{version of the booking}-{version of the reservation state of the campsite}".
+   * <p>If the reservation state did not change since the ETag was returned, a 304 response is returned without
+   * reading the booking. Otherwise, the booking is read and a 304 response is returned if its version did not change.
+   * </p>
+   */
+  @Operation(summary = "Get the information of a specific reservation with a given id.")
+  @GetMapping(path = {BASE_BOOKING_PATH + "/{id}", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/{id}"})
+  public ResponseEntity<Booking> getBooking(@PathVariable(required = false)
+                                            @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                            Long campsiteId,
+                                            @PathVariable long id,
+                                            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false)
+                                            @Parameter(hidden = true)
+                                            String ifNoneMatch) {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    // The state version must be read before the booking
+    final var stateVersion = reservationStateVersion.current(campsite);
+    final var requestedTag = findBookingTag(ifNoneMatch, id);
+    if (requestedTag.isPresent() && requestedTag.get()[2].equals(stateVersion)) {
+      return notModified(bookingTag(id, requestedTag.get()[1], stateVersion));
+    }
+    final var bookingDto = bookingService.findById(campsite, id)
         .orElseThrow(() -> new BookingNotFoundException(id));
+    final var bookingVersion = String.valueOf(bookingDto.getVersion());
+    final var etag = bookingTag(id, bookingVersion, stateVersion);
+    if (requestedTag.isPresent() && requestedTag.get()[1].equals(bookingVersion)) {
+      return notModified(etag);
+    }
+    return ResponseEntity.ok()
+        .eTag(etag)
+        .body(Booking.createFrom(bookingDto));
   }
 
   @Operation(summary = "Get the campsite availability days within a given date range with the default" +
           " being set to 1 month from current date.")
-  @GetMapping(path = BASE_AVAILABLE_PATH)
-  public List<LocalDate> getBookingAvailabilities(@DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+  @GetMapping(path = {BASE_AVAILABLE_PATH, BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH})
+  public List<LocalDate> getBookingAvailabilities(@PathVariable(required = false)
+                                                  @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                                  Long campsiteId,
+                                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
                                                   @RequestParam(required = false)
                                                   @Parameter(name = "Start date",
                                                           description = "Start date is included, default is set to today")
@@ -72,52 +258,270 @@ public class BookingController {
                                                   @RequestParam(required = false)
                                                   @Parameter(name = "End date",
                                                           description = "End date is excluded, default is start date + 1 month")
-                                                  LocalDate endDate) {
-    if (startDate == null) {
-      startDate = LocalDate.now();
+                                                  LocalDate endDate,
+                                                  WebRequest webRequest) {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    return getAvailabilities(campsite, startDate, endDate, webRequest, "dates",
+        (start, end) -> bookingService.getAvailabilities(campsite, start, end));
+  }
+
+  @Operation(summary = "Get the campsite free periods [start, endExclusive) within a given date range with the" +
+          " default being set to 1 month from current date.")
+  @GetMapping(path = {BASE_AVAILABLE_PATH, BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH}, params = "format=intervals")
+  public List<AvailabilityInterval> getBookingAvailabilityIntervals(@PathVariable(required = false)
+                                                                    @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                                                    Long campsiteId,
+                                                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                                    @RequestParam(required = false)
+                                                                    @Parameter(name = "Start date",
+                                                                            description = "Start date is included, default is set to today")
+                                                                    LocalDate startDate,
+                                                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                                    @RequestParam(required = false)
+                                                                    @Parameter(name = "End date",
+                                                                            description = "End date is excluded, default is start date + 1 month")
+                                                                    LocalDate endDate,
+                                                                    WebRequest webRequest) {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    return getAvailabilities(campsite, startDate, endDate, webRequest, "intervals",
+        (start, end) -> bookingService.getAvailabilityIntervals(campsite, start, end));
+  }
+
+  @Operation(summary = "Stream the campsite availability changes within a given date range with the default" +
+          " being set to 1 month from current date.")
+  @GetMapping(path = {BASE_AVAILABLE_PATH + "/stream", BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH + "/stream"},
+      produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamBookingAvailabilities(@PathVariable(required = false)
+                                                @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                                Long campsiteId,
+                                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                @RequestParam(required = false)
+                                                @Parameter(name = "Start date",
+                                                        description = "Start date is included, default is set to today")
+                                                LocalDate startDate,
+                                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                                                @RequestParam(required = false)
+                                                @Parameter(name = "End date",
+                                                        description = "End date is excluded, default is start date + 1 month")
+                                                LocalDate endDate) {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    final var start = startDateOrToday(startDate);
+    final var end = endDateOrOneMonthLater(start, endDate);
+    log.info("Stream availabilities of the campsite {} between {} and {}", campsite, start, end);
+    return availabilityStreamService.subscribe(campsite, start, end);
+  }
+
+  private <T> T getAvailabilities(long campsiteId, LocalDate startDate, LocalDate endDate, WebRequest webRequest,
+                                  String format, BiFunction<LocalDate, LocalDate, T> availabilities) {
+    final var start = startDateOrToday(startDate);
+    final var end = endDateOrOneMonthLater(start, endDate);
+    // The ETag contains the date range because the default range changes every day
+    final var etag = "\"" + reservationStateVersion.current(campsiteId) + "-" + format + "-" + start + "-" + end
+        + "\"";
+    if (webRequest.checkNotModified(etag)) {
+      log.info("Availabilities between {} and {} not modified", start, end);
+      return null;
+    }
+    log.info("Get availabilities between {} and {}", start, end);
+    return availabilities.apply(start, end);
+  }
+
+  /**
+   * Returns the campsite of the path, or the default campsite for the paths without campsite.
+   *
+   * @throws CampsiteNotFoundException if the campsite is not one of {@code campsite.campsite-ids}.
+   */
+  private long campsiteIdOrDefault(Long campsiteId) {
+    if (campsiteId == null) {
+      return BookingDto.DEFAULT_CAMPSITE_ID;
+    }
+    if (!rsvpConfig.getCampsiteIds().contains(campsiteId)) {
+      throw new CampsiteNotFoundException(campsiteId);
     }
+    return campsiteId;
+  }
+
+  private static LocalDate startDateOrToday(LocalDate startDate) {
+    return startDate == null ? LocalDate.now() : startDate;
+  }
+
+  private static LocalDate endDateOrOneMonthLater(LocalDate startDate, LocalDate endDate) {
     if (endDate == null) {
-      endDate = startDate.plusMonths(1);
+      return startDate.plusMonths(1);
     }
     if (startDate.isAfter(endDate)) {
       throw new BadRequestException(
               MessageFormat.format("Start date {0} is after end date {1}", startDate, endDate));
     }
-    log.info("Get availabilities between {} and {}", startDate, endDate);
-    return bookingService.getAvailabilities(startDate, endDate);
+    return endDate;
   }
 
+  /**
+   * With an Idempotency-Key header, the booking is added once per key: the retries of the request get the response of
+   * the first request, with the header Idempotent-Replayed (See {@link IdempotencyService}).
+   */
   @Operation(summary = "Reserve the campsite.")
-  @PostMapping(path = BASE_BOOKING_PATH)
-  public Booking addBooking(@Valid @RequestBody Booking booking) {
+  @PostMapping(path = {BASE_BOOKING_PATH, BASE_CAMPSITE_PATH + BASE_BOOKING_PATH})
+  public ResponseEntity<Booking> addBooking(@PathVariable(required = false)
+                                            @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                            Long campsiteId,
+                                            @Valid @RequestBody Booking requestBooking,
+                                            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false)
+                                            @Parameter(description = "Unique key of the request, to retry it safely")
+                                            String idempotencyKey) {
+    // The campsite is the campsite of the path
+    final var booking = requestBooking.toBuilder()
+        .campsiteId(campsiteIdOrDefault(campsiteId))
+        .build();
     try {
       log.info("Add booking {}", booking);
-      return Booking.createFrom(bookingService.add(BookingDto.createFrom(booking)));
-    } catch (DataAccessException e) {
+      if (idempotencyKey == null) {
+        return ResponseEntity.ok(Booking.createFrom(bookingService.add(BookingDto.createFrom(booking))));
+      }
+      if (idempotencyKey.isBlank() || idempotencyKey.length() > IDEMPOTENCY_KEY_MAX_LENGTH) {
+        throw new BadRequestException(MessageFormat.format("Idempotency-Key must contain 1 to {0} characters",
+            IDEMPOTENCY_KEY_MAX_LENGTH));
+      }
+      final var response = idempotencyService.add(idempotencyKey, booking);
+      final var builder = ResponseEntity.ok();
+      if (response.isReplayed()) {
+        builder.header(IDEMPOTENT_REPLAYED_HEADER, "true");
+      }
+      return builder.body(response.getBooking());
+    } catch (DataIntegrityViolationException e) {
+      // The primary key of the booking dates was violated by a concurrent booking. The transient failures were
+      // retried by the BookingService, and are not conflicts (See BookingControllerAdvice).
       throw new BookingConflictException("Selected dates are not available to be reserved");
     }
   }
 
-
+  /**
+   * Every booking of the batch is validated, and the valid bookings are added in 1 transaction (See
+   * {@link BookingService#addAll(long, List)}). The results are returned in the order of the bookings.
+   */
+  @Operation(summary = "Reserve the campsite for a batch of bookings, with a result per booking.")
+  @PostMapping(path = {BASE_BOOKING_PATH + "/batch", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/batch"})
+  public List<BatchBookingResult> addBookings(@PathVariable(required = false)
+                                              @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                                              Long campsiteId,
+                                              @RequestBody List<Booking> bookings) {
+    final var campsite = campsiteIdOrDefault(campsiteId);
+    log.info("Add a batch of {} bookings to the campsite {}", bookings.size(), campsite);
+    if (bookings.size() > rsvpConfig.getBatchMaxSize()) {
+      throw new BadRequestException(MessageFormat.format("A batch contains maximum {0} bookings",
+          rsvpConfig.getBatchMaxSize()));
+    }
+    final var results = new ArrayList<BatchBookingResult>(bookings.size());
+    final var validBookingDtos = new ArrayList<BookingDto>();
+    for (var booking : bookings) {
+      if (booking == null) {
+        results.add(BatchBookingResult.failed(HttpStatus.BAD_REQUEST, "The booking is required."));
+        continue;
+      }
+      final var violations = validator.validate(booking);
+      if (violations.isEmpty()) {
+        validBookingDtos.add(BookingDto.createFrom(booking));
+        // Replaced by the result of the BookingService
+        results.add(null);
+      } else {
+        results.add(BatchBookingResult.failed(HttpStatus.BAD_REQUEST, violations.stream()
+            .map(ConstraintViolation::getMessage)
+            .sorted()
+            .collect(Collectors.joining(". "))
+            .concat(".")));
+      }
+    }
+    final var addedResults = bookingService.addAll(campsite, validBookingDtos).iterator();
+    results.replaceAll(result -> result == null ? addedResults.next() : result);
+    return results;
+  }
 
   @Operation(summary = "Update booking reservation with the given id.")
-  @PutMapping(path = BASE_BOOKING_PATH + "/{id}")
-  public Booking updateBooking(@PathVariable long id, @Valid @RequestBody Booking booking) {
+  @PutMapping(path = {BASE_BOOKING_PATH + "/{id}", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/{id}"})
+  public Booking updateBooking(@PathVariable(required = false)
+                               @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                               Long campsiteId,
+                               @PathVariable long id,
+                               @Valid @RequestBody Booking booking) {
     log.info("Update booking {} with {}", id, booking);
-    final var oldBookingDto = bookingService.findById(id)
+    final var oldBookingDto = bookingService.findById(campsiteIdOrDefault(campsiteId), id)
         .orElseThrow(() -> new BookingNotFoundException(id));
     final var newBookingDto = BookingDto.createFrom(booking);
-    return Booking.createFrom(bookingService.update(oldBookingDto, newBookingDto));
+    try {
+      return Booking.createFrom(bookingService.update(oldBookingDto, newBookingDto));
+    } catch (DataIntegrityViolationException e) {
+      throw new BookingConflictException("Selected dates are not available to be reserved");
+    }
   }
 
   @Operation(summary = "Cancel booking reservation with the given id.")
-  @DeleteMapping(path = BASE_BOOKING_PATH + "/{id}")
-  public void deleteBooking(@PathVariable long id) {
+  @DeleteMapping(path = {BASE_BOOKING_PATH + "/{id}", BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/{id}"})
+  public void deleteBooking(@PathVariable(required = false)
+                            @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                            Long campsiteId,
+                            @PathVariable long id) {
     log.info("Delete booking {}", id);
     try {
-      bookingService.deleteById(id);
+      bookingService.deleteById(campsiteIdOrDefault(campsiteId), id);
     } catch (EmptyResultDataAccessException e) {
       throw new BookingNotFoundException(id);
     }
   }
+
+  @Operation(summary = "Hold the dates of a stay for a limited time, before confirming the booking.")
+  @PostMapping(path = {BASE_HOLD_PATH, BASE_CAMPSITE_PATH + BASE_HOLD_PATH})
+  public Hold addHold(@PathVariable(required = false)
+                      @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                      Long campsiteId,
+                      @Valid @RequestBody Hold hold) {
+    log.info("Add hold {}", hold);
+    return holdService.hold(campsiteIdOrDefault(campsiteId), hold.getArrivalDate(), hold.getDepartureDate());
+  }
+
+  @Operation(summary = "Reserve the campsite with the dates of the hold with the given id.")
+  @PostMapping(path = {BASE_HOLD_PATH + "/{id}/booking", BASE_CAMPSITE_PATH + BASE_HOLD_PATH + "/{id}/booking"})
+  public Booking confirmHold(@PathVariable(required = false)
+                             @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                             Long campsiteId,
+                             @PathVariable String id,
+                             @Valid @RequestBody Booking booking) {
+    log.info("Confirm hold {} with {}", id, booking);
+    final var bookingDto = BookingDto.createFrom(booking);
+    bookingDto.setCampsiteId(campsiteIdOrDefault(campsiteId));
+    return Booking.createFrom(holdService.confirm(id, bookingDto));
+  }
+
+  @Operation(summary = "Release the dates of the hold with the given id.")
+  @DeleteMapping(path = {BASE_HOLD_PATH + "/{id}", BASE_CAMPSITE_PATH + BASE_HOLD_PATH + "/{id}"})
+  public void deleteHold(@PathVariable(required = false)
+                         @Parameter(description = CAMPSITE_ID_DESCRIPTION)
+                         Long campsiteId,
+                         @PathVariable String id) {
+    log.info("Delete hold {}", id);
+    holdService.release(campsiteIdOrDefault(campsiteId), id);
+  }
+
+  private static String bookingTag(long id, String bookingVersion, String stateVersion) {
+    return "\"" + id + "-" + bookingVersion + "-" + stateVersion + "\"";
+  }
+
+  /**
+   * Returns the parts [id, version of the booking, version of the reservation state] of the first ETag of the
+   * If-None-Match header that matches the booking id.
+   */
+  private static Optional<String[]> findBookingTag(String ifNoneMatch, long id) {
+    if (ifNoneMatch == null) {
+      return Optional.empty();
+    }
+    return Arrays.stream(ifNoneMatch.split(","))
+        .map(tag -> tag.trim().replaceFirst("^W/", "").replace("\"", "").split("-"))
+        .filter(parts -> parts.length == 3 && parts[0].equals(String.valueOf(id)))
+        .findFirst();
+  }
+
+  private static <T> ResponseEntity<T> notModified(String etag) {
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .eTag(etag)
+        .build();
+  }
 }
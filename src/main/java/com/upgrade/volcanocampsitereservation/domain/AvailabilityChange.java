@@ -0,0 +1,23 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The dates that flipped between reserved and available after a booking change.
+ */
+@Value
+@Builder
+@Schema(title = "Availability change", description = "Dates that became available or reserved")
+public class AvailabilityChange {
+
+  @Schema(description = "Dates that became available")
+  List<LocalDate> available;
+
+  @Schema(description = "Dates that became reserved")
+  List<LocalDate> reserved;
+}
@@ -0,0 +1,20 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/**
+ * A period [start, endExclusive) during which the campsite is available.
+ */
+@Value
+@Builder
+@Schema(title = "Availability interval", description = "Free period, the end date is excluded")
+public class AvailabilityInterval {
+
+  LocalDate start;
+
+  LocalDate endExclusive;
+}
@@ -0,0 +1,39 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.http.HttpStatus;
+
+/**
+ * The result of 1 booking of a batch. The results are returned in the order of the bookings of the batch.
+ */
+@Value
+@Builder
+@Schema(title = "Batch booking result", description = "Result of 1 booking of a batch")
+public class BatchBookingResult {
+
+  @Schema(description = "OK if the booking was added, BAD_REQUEST if it is invalid, CONFLICT if its dates are not"
+      + " available")
+  HttpStatus status;
+
+  @Schema(description = "The added booking")
+  Booking booking;
+
+  @Schema(description = "Description of the error")
+  String message;
+
+  public static BatchBookingResult added(Booking booking) {
+    return BatchBookingResult.builder()
+        .status(HttpStatus.OK)
+        .booking(booking)
+        .build();
+  }
+
+  public static BatchBookingResult failed(HttpStatus status, String message) {
+    return BatchBookingResult.builder()
+        .status(status)
+        .message(message)
+        .build();
+  }
+}
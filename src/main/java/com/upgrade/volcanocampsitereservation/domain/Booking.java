@@ -3,6 +3,7 @@ package com.upgrade.volcanocampsitereservation.domain;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
 import com.upgrade.volcanocampsitereservation.validation.BookingGuideLine;
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Value;
 
@@ -13,9 +14,11 @@ import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
 
 @Value
-@Builder
+@Builder(toBuilder = true)
+// Public for the constructor expressions of the read queries (See BookingRepository)
+@AllArgsConstructor
 @BookingGuideLine
-public class Booking {
+public class Booking implements Stay {
 
   @Email(message = "Email should be valid")
   @NotBlank(message = "Email cannot be blank")
@@ -36,12 +39,18 @@ public class Booking {
   @Schema(hidden = true)
   long id;
 
+  // The campsite of the path of the request
+  @Schema(hidden = true)
+  @Builder.Default
+  long campsiteId = BookingDto.DEFAULT_CAMPSITE_ID;
+
   /**
    * Generates a Booking object from BookingDto object.
    */
   public static Booking createFrom(BookingDto bookingDto) {
     return Booking.builder()
         .id(bookingDto.getId())
+        .campsiteId(bookingDto.getCampsiteId())
         .email(bookingDto.getEmail())
         .fullName(bookingDto.getFullName())
         .arrivalDate(bookingDto.getArrivalDate())
@@ -0,0 +1,37 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Position of the last booking of a page in the order (arrivalDate, id): the next page starts after it, whatever was
+ * added or deleted before it. The cursor is opaque to the clients (Base64 of "{arrivalDate}:{id}").
+ */
+@Value
+public class BookingCursor {
+
+  LocalDate arrivalDate;
+
+  long id;
+
+  /**
+   * @throws BadRequestException if the cursor was not returned by {@link #encode()}.
+   */
+  public static BookingCursor decode(String cursor) {
+    try {
+      final var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+      return new BookingCursor(LocalDate.parse(parts[0]), Long.parseLong(parts[1]));
+    } catch (RuntimeException e) {
+      throw new BadRequestException("Invalid cursor " + cursor);
+    }
+  }
+
+  public String encode() {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString((arrivalDate + ":" + id).getBytes(StandardCharsets.UTF_8));
+  }
+}
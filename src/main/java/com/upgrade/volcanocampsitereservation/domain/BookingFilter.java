@@ -0,0 +1,25 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/**
+ * Optional ranges of the arrival and departure dates of the bookings. A null bound is not checked, the start dates
+ * are included and the end dates are excluded.
+ */
+@Value
+@Builder
+public class BookingFilter {
+
+  public static final BookingFilter NONE = BookingFilter.builder().build();
+
+  LocalDate arrivalFrom;
+
+  LocalDate arrivalTo;
+
+  LocalDate departureFrom;
+
+  LocalDate departureTo;
+}
@@ -0,0 +1,40 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import com.upgrade.volcanocampsitereservation.validation.BookingGuideLine;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+
+import javax.validation.constraints.Future;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Dates held for a limited time, to be confirmed into a booking.
+ */
+@Value
+@Builder(toBuilder = true)
+@BookingGuideLine
+public class Hold implements Stay {
+
+  @Future(message = "ArrivalDate must occur in the future")
+  @NotNull(message = "ArrivalDate is a mandatory field")
+  LocalDate arrivalDate;
+
+  @Future(message = "DepartureDate must occur in the future")
+  @NotNull(message = "DepartureDate is a mandatory field")
+  LocalDate departureDate;
+
+  // This returns the ID of a hold in the response
+  @Schema(hidden = true)
+  String id;
+
+  // The campsite of the path of the request
+  @Schema(hidden = true)
+  long campsiteId;
+
+  // The dates are released at this instant if the hold is not confirmed
+  @Schema(hidden = true)
+  Instant expiresAt;
+}
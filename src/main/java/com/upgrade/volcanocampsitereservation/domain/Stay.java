@@ -0,0 +1,13 @@
+package com.upgrade.volcanocampsitereservation.domain;
+
+import java.time.LocalDate;
+
+/**
+ * The dates of a stay: the arrival date is included, and the departure date is excluded.
+ */
+public interface Stay {
+
+  LocalDate getArrivalDate();
+
+  LocalDate getDepartureDate();
+}
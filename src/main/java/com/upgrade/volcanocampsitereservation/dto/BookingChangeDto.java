@@ -0,0 +1,46 @@
+package com.upgrade.volcanocampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Entry of the change log, written in the same transaction as the booking change.
+ * <p>The replicas tail the change log by sequence number to refresh their in-memory state.</p>
+ */
+@Entity(name = "BookingChange")
+@Table(indexes = @Index(columnList = "createdAt"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingChangeDto {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long sequence;
+
+  // Identifier of the replica that committed the change
+  private String origin;
+
+  private long bookingId;
+
+  private long campsiteId;
+
+  // Range of the released and reserved dates, null for a change without dates (e.g. an update of the email)
+  private LocalDate startDate;
+
+  private LocalDate endDate;
+
+  private Instant createdAt;
+}
@@ -7,14 +7,47 @@ import lombok.NoArgsConstructor;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDate;
 
+/**
+ * A date reserved at a campsite. The primary key (campsiteId, date) rejects the concurrent reservations of the same
+ * date at the same campsite, and the dates of a campsite are a range of the primary key index.
+ */
 @Entity
+@IdClass(BookingDateDto.Key.class)
+@Table(indexes = {@Index(columnList = "bookingId"), @Index(columnList = "holdId")})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class BookingDateDto {
+  @Id
+  private long campsiteId;
+
   @Id
   private LocalDate date;
+
+  // Id of the booking that owns the date, 0 for a held date
+  private long bookingId;
+
+  // Id of the hold that owns the date until it is confirmed, null for a booked date
+  private String holdId;
+
+  private Instant heldUntil;
+
+  /**
+   * Primary key of the {@link BookingDateDto}.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Key implements Serializable {
+    private long campsiteId;
+    private LocalDate date;
+  }
 }
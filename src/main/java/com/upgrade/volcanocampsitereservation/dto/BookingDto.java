@@ -7,21 +7,30 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.persistence.Version;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Entity(name = "Booking")
+// The pages of the bookings of a campsite, and the bookings of an email, are ranges of these indexes
+@Table(indexes = {@Index(columnList = "campsiteId, arrivalDate, id"), @Index(columnList = "emailKey, campsiteId")})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class BookingDto {
 
+  // Campsite of the paths without campsite id (e.g. /bookings)
+  public static final long DEFAULT_CAMPSITE_ID = 1;
+
   @Id
   @GeneratedValue
   private long id;
@@ -30,6 +39,9 @@ public class BookingDto {
   @GeneratedValue
   private long version;
 
+  @Builder.Default
+  private long campsiteId = DEFAULT_CAMPSITE_ID;
+
   private String email;
 
   private String fullName;
@@ -38,11 +50,26 @@ public class BookingDto {
 
   private LocalDate departureDate;
 
+  /**
+   * Lookup key of the email (See {@link Utils#normalizeEmail}), written in its own indexed column. The email itself is
+   * saved and returned as entered.
+   */
+  @Access(AccessType.PROPERTY)
+  public String getEmailKey() {
+    return Utils.normalizeEmail(email);
+  }
+
+  // The key is derived from the email: the value read from the database is ignored
+  @SuppressWarnings("unused")
+  private void setEmailKey(String emailKey) {
+  }
+
   /**
    * Generates a BookingDto object from Booking object.
    */
   public static BookingDto createFrom(Booking booking) {
     return BookingDto.builder()
+        .campsiteId(booking.getCampsiteId())
         .email(booking.getEmail())
         .fullName(booking.getFullName())
         .arrivalDate(booking.getArrivalDate())
@@ -53,7 +80,11 @@ public class BookingDto {
   public List<BookingDateDto> bookingDates() {
     return Utils.getDatesBetween(arrivalDate, departureDate)
         .stream()
-        .map(localDate -> BookingDateDto.builder().date(localDate).build())
+        .map(localDate -> BookingDateDto.builder()
+            .campsiteId(campsiteId)
+            .date(localDate)
+            .bookingId(id)
+            .build())
         .collect(Collectors.toList());
   }
 }
@@ -0,0 +1,44 @@
+package com.upgrade.volcanocampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * The remaining capacity of a day at a campsite with several pitches (See {@code campsite.capacities}). The rows of a
+ * campsite are a range of the primary key (campsiteId, date).
+ */
+@Entity
+@IdClass(DailyInventoryDto.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyInventoryDto {
+  @Id
+  private long campsiteId;
+
+  @Id
+  private LocalDate date;
+
+  // Number of pitches that are not booked, never negative
+  private int remaining;
+
+  /**
+   * Primary key of the {@link DailyInventoryDto}.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Key implements Serializable {
+    private long campsiteId;
+    private LocalDate date;
+  }
+}
@@ -0,0 +1,52 @@
+package com.upgrade.volcanocampsitereservation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Response of a {@code POST /bookings} request with an {@code Idempotency-Key} header, written in the same transaction
+ * as the booking.
+ */
+@Entity(name = "IdempotencyKey")
+@Table(indexes = @Index(columnList = "createdAt"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyKeyDto implements Persistable<String> {
+
+  @Id
+  private String idempotencyKey;
+
+  // SHA-256 of the request body, to detect the reuse of a key for another booking
+  private String requestHash;
+
+  private long bookingId;
+
+  // Json of the response body
+  @Column(length = 2000)
+  private String response;
+
+  private Instant createdAt;
+
+  @Override
+  public String getId() {
+    return idempotencyKey;
+  }
+
+  // Always inserted (never merged): a concurrent request with the same key violates the primary key
+  @Override
+  public boolean isNew() {
+    return true;
+  }
+}
@@ -0,0 +1,46 @@
+package com.upgrade.volcanocampsitereservation.event;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Published by the {@code BookingService} when a booking is added, updated or deleted, and by the
+ * {@code HoldService} when dates are held or released, or a hold is confirmed.
+ * <p>The listeners are notified after the commit of the transaction, so the dates are guaranteed to be
+ * reserved (or released) in the database.</p>
+ */
+@Value
+@Builder
+public class BookingChangedEvent {
+
+  // Version of a deleted booking
+  public static final long DELETED = -1;
+
+  // The released and reserved dates are dates of this campsite
+  long campsiteId;
+
+  // 0 for the dates of a hold
+  long bookingId;
+
+  // Dates that were reserved by the booking before the change, and are released by the change
+  @Singular
+  List<LocalDate> releasedDates;
+
+  // Dates that are reserved by the change
+  @Singular
+  List<LocalDate> reservedDates;
+
+  // Version of the booking after the change, or DELETED. Unknown (0) for a remote change
+  long version;
+
+  // Emails of the booking before and after the change, empty for the dates of a hold and for a remote change
+  @Singular
+  List<String> emails;
+
+  // True when the change was committed by another replica (See ChangeLogService)
+  boolean remote;
+}
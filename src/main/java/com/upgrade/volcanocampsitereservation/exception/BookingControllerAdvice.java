@@ -7,7 +7,11 @@ import lombok.Builder;
 import lombok.Value;
 import org.springframework.beans.BeansException;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.validation.BindException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -20,6 +24,8 @@ import java.util.stream.Collectors;
 @ControllerAdvice
 public class BookingControllerAdvice {
 
+  private static final String RETRY_AFTER_SECONDS = "1";
+
   private ErrorResponse errorHandler(HttpStatus status, Throwable throwable) {
     return ErrorResponse.builder()
         .status(status)
@@ -79,6 +85,20 @@ public class BookingControllerAdvice {
     return errorHandler(HttpStatus.NOT_FOUND, e);
   }
 
+  @ResponseBody
+  @ExceptionHandler(HoldNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  ErrorResponse holdNotFoundHandler(HoldNotFoundException e) {
+    return errorHandler(HttpStatus.NOT_FOUND, e);
+  }
+
+  @ResponseBody
+  @ExceptionHandler(CampsiteNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  ErrorResponse campsiteNotFoundHandler(CampsiteNotFoundException e) {
+    return errorHandler(HttpStatus.NOT_FOUND, e);
+  }
+
   @ResponseBody
   @ExceptionHandler(BookingConflictException.class)
   @ResponseStatus(HttpStatus.CONFLICT)
@@ -86,6 +106,39 @@ public class BookingControllerAdvice {
     return errorHandler(HttpStatus.CONFLICT, e);
   }
 
+  /**
+   * The service is overloaded (See AdmissionControlInterceptor), or a limit is reached.
+   */
+  @ExceptionHandler(ServiceUnavailableException.class)
+  ResponseEntity<ErrorResponse> serviceUnavailableHandler(ServiceUnavailableException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+        .body(errorHandler(HttpStatus.SERVICE_UNAVAILABLE, e));
+  }
+
+  /**
+   * The booking was modified since it was read.
+   */
+  @ResponseBody
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  ErrorResponse optimisticLockingFailureHandler(OptimisticLockingFailureException e) {
+    return ErrorResponse.builder()
+        .status(HttpStatus.CONFLICT)
+        .message("The booking was modified by another request")
+        .build();
+  }
+
+  /**
+   * Transient lock or serialization failure that was still failing after the retries (See BookingRetryPolicy).
+   */
+  @ExceptionHandler(ConcurrencyFailureException.class)
+  ResponseEntity<ErrorResponse> concurrencyFailureHandler(ConcurrencyFailureException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+        .body(errorHandler(HttpStatus.SERVICE_UNAVAILABLE, e));
+  }
+
   @ResponseBody
   @ExceptionHandler(RuntimeException.class)
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
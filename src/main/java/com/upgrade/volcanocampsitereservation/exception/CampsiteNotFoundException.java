@@ -0,0 +1,7 @@
+package com.upgrade.volcanocampsitereservation.exception;
+
+public class CampsiteNotFoundException extends RuntimeException {
+  public CampsiteNotFoundException(long id) {
+    super("Could not find campsite with id " + id);
+  }
+}
@@ -0,0 +1,7 @@
+package com.upgrade.volcanocampsitereservation.exception;
+
+public class HoldNotFoundException extends RuntimeException {
+  public HoldNotFoundException(String id) {
+    super("Could not find hold with id " + id);
+  }
+}
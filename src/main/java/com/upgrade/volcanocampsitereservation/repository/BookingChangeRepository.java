@@ -0,0 +1,28 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingChangeDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BookingChangeRepository extends JpaRepository<BookingChangeDto, Long> {
+
+  List<BookingChangeDto> findBySequenceGreaterThanOrderBySequence(long sequence, Pageable pageable);
+
+  List<BookingChangeDto> findBySequenceInOrderBySequence(Collection<Long> sequences);
+
+  @Query("select max(c.sequence) from #{#entityName} c")
+  Optional<Long> findMaxSequence();
+
+  @Modifying
+  @Query("delete from #{#entityName} c where c.createdAt < ?1")
+  int deleteAllCreatedBefore(Instant createdAt);
+}
@@ -3,24 +3,76 @@ package com.upgrade.volcanocampsitereservation.repository;
 import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.stream.Stream;
 
 @Repository
-public interface BookingDateRepository extends JpaRepository<BookingDateDto, LocalDate> {
+public interface BookingDateRepository
+    extends JpaRepository<BookingDateDto, BookingDateDto.Key>, BookingDateRepositoryCustom {
 
-  String FIND_DATES_BETWEEN_QUERY = "select d from #{#entityName} d where d.date >= ?1 and d.date < ?2";
+  // A range of the primary key (campsiteId, date): only the rows of the campsite are scanned and locked
+  String FIND_DATES_BETWEEN_QUERY =
+      "select d from #{#entityName} d where d.campsiteId = ?1 and d.date >= ?2 and d.date < ?3";
 
   // saving without conflict use case
   @Lock(LockModeType.PESSIMISTIC_WRITE)
   @Query(FIND_DATES_BETWEEN_QUERY)
-  Stream<BookingDateDto> findAllDatesBetween(LocalDate startInclusive, LocalDate endExclusive);
+  Stream<BookingDateDto> findAllDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive);
 
   // This will search will be faster
   @Query(FIND_DATES_BETWEEN_QUERY)
-  Stream<BookingDateDto> quickFindAllDatesBetween(LocalDate startInclusive, LocalDate endExclusive);
+  Stream<BookingDateDto> quickFindAllDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive);
+
+  // Sorted by the primary key, used to compute the free intervals
+  @Query(FIND_DATES_BETWEEN_QUERY + " order by d.date")
+  Stream<BookingDateDto> quickFindAllSortedDatesBetween(long campsiteId, LocalDate startInclusive,
+                                                        LocalDate endExclusive);
+
+  @Query("select distinct d.campsiteId from #{#entityName} d")
+  List<Long> findCampsiteIds();
+
+  // A prefix of the primary key (campsiteId, date)
+  @Query("select d.date from #{#entityName} d where d.campsiteId = ?1")
+  List<LocalDate> findDatesByCampsiteId(long campsiteId);
+
+  // 1 bulk statement instead of 1 select and 1 delete per entity
+  @Modifying
+  @Query("delete from #{#entityName} d where d.bookingId = ?1 and d.date in ?2")
+  int deleteAllByBookingIdAndDateIn(long bookingId, Collection<LocalDate> dates);
+
+  @Modifying
+  @Query("delete from #{#entityName} d where d.bookingId = ?1")
+  int deleteAllByBookingId(long bookingId);
+
+  // Dates whose booking does not exist (the held dates have no booking yet)
+  @Query("select d from #{#entityName} d where d.holdId is null"
+      + " and not exists (select b.id from Booking b where b.id = d.bookingId) order by d.campsiteId, d.date")
+  List<BookingDateDto> findOrphans();
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select d from #{#entityName} d where d.holdId = ?1 order by d.date")
+  List<BookingDateDto> findAllByHoldId(String holdId);
+
+  @Query("select d from #{#entityName} d where d.holdId is not null")
+  List<BookingDateDto> findAllHeld();
+
+  @Query("select distinct d.holdId from #{#entityName} d where d.heldUntil <= ?1")
+  List<String> findExpiredHoldIds(Instant now);
+
+  // The held dates are transferred to the booking
+  @Modifying
+  @Query("update #{#entityName} d set d.bookingId = ?2, d.holdId = null, d.heldUntil = null where d.holdId = ?1")
+  int confirmHold(String holdId, long bookingId);
+
+  @Modifying
+  @Query("delete from #{#entityName} d where d.holdId = ?1")
+  int deleteAllByHoldId(String holdId);
 }
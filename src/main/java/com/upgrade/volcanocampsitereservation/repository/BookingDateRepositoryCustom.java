@@ -0,0 +1,15 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+
+import java.util.Collection;
+
+public interface BookingDateRepositoryCustom {
+
+  /**
+   * Inserts the booking dates without checking whether they exist (unlike {@code saveAll()} which merges each
+   * entity), and flushes the inserts in JDBC batches.
+   * <p>Throws a DataIntegrityViolationException if a date is already reserved.</p>
+   */
+  void insertAll(Collection<BookingDateDto> bookingDates);
+}
@@ -0,0 +1,21 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+
+public class BookingDateRepositoryCustomImpl implements BookingDateRepositoryCustom {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void insertAll(Collection<BookingDateDto> bookingDates) {
+    // Removed booking dates must be deleted before persisting new entities with the same primary key
+    entityManager.flush();
+    bookingDates.forEach(entityManager::persist);
+    entityManager.flush();
+  }
+}
@@ -1,15 +1,68 @@
 package com.upgrade.volcanocampsitereservation.repository;
 
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.Stay;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface BookingRepository extends JpaRepository<BookingDto, Long> {
+public interface BookingRepository extends JpaRepository<BookingDto, Long>, BookingRepositoryCustom {
   // Version field is automatically incremented
   @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
   <S extends BookingDto> S save(S entity);
+
+  /**
+   * Returns the bookings of the campsite in the order (arrivalDate, id), from the arrival date arrivalFrom and after
+   * the booking afterId of that date, with 1 seek in the index (campsiteId, arrivalDate, id). The departure dates are
+   * filtered in the range of the index.
+   * <p>The slice contains at most the size of the pageable, 1 more booking is read to know whether there is a next
+   * slice (no count query). The bookings are built from the rows by a constructor expression, without entities.</p>
+   */
+  @Query("select new com.upgrade.volcanocampsitereservation.domain.Booking(b.email, b.fullName, b.arrivalDate,"
+      + " b.departureDate, b.id, b.campsiteId) from #{#entityName} b where b.campsiteId = ?1 and b.arrivalDate >= ?2"
+      + " and b.arrivalDate < ?3 and b.departureDate >= ?4 and b.departureDate < ?5"
+      + " and (b.arrivalDate > ?2 or b.id > ?6) order by b.arrivalDate, b.id")
+  Slice<Booking> findPage(long campsiteId, LocalDate arrivalFrom, LocalDate arrivalTo, LocalDate departureFrom,
+                          LocalDate departureTo, long afterId, Pageable pageable);
+
+  // Unmanaged copy of the booking: no entry in the persistence context, no snapshot for the dirty checking
+  @Query("select new com.upgrade.volcanocampsitereservation.dto.BookingDto(b.id, b.version, b.campsiteId, b.email,"
+      + " b.fullName, b.arrivalDate, b.departureDate) from #{#entityName} b where b.id = ?1")
+  Optional<BookingDto> findDetachedById(long id);
+
+  // Checks a cached booking without loading the entity
+  @Query("select b.version from #{#entityName} b where b.id = ?1")
+  Optional<Long> findVersionById(long id);
+
+  // Range of the index (emailKey, campsiteId), the email is normalized (See Utils.normalizeEmail)
+  @Query("select b from #{#entityName} b where b.emailKey = ?1 and b.campsiteId = ?2 order by b.arrivalDate, b.id")
+  List<BookingDto> findAllByEmail(String email, long campsiteId);
+
+  // Projection of the dates and the email of the booking, without loading the entity (select for update)
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select b.arrivalDate as arrivalDate, b.departureDate as departureDate, b.email as email"
+      + " from #{#entityName} b where b.campsiteId = ?1 and b.id = ?2")
+  Optional<BookingStay> findStayByCampsiteIdAndId(long campsiteId, long id);
+
+  /**
+   * The stay of a booking, with the email of the booking.
+   */
+  interface BookingStay extends Stay {
+    String getEmail();
+  }
+
+  @Modifying
+  @Query("delete from #{#entityName} b where b.id = ?1")
+  int deleteBookingById(long id);
 }
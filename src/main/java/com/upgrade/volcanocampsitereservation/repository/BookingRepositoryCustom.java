@@ -0,0 +1,16 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+
+import java.util.stream.Stream;
+
+public interface BookingRepositoryCustom {
+
+  /**
+   * Streams the bookings of the campsite in the order (arrivalDate, id) from a server-side cursor, fetching fetchSize
+   * rows per round trip. The bookings are built from the rows by a constructor expression: no entity is added to the
+   * persistence context, so it does not grow with the number of rows.
+   * <p>The stream must be consumed and closed in a transaction.</p>
+   */
+  Stream<Booking> streamAllByCampsiteId(long campsiteId, int fetchSize);
+}
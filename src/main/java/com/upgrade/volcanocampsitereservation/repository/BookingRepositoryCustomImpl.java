@@ -0,0 +1,24 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import org.hibernate.jpa.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.stream.Stream;
+
+public class BookingRepositoryCustomImpl implements BookingRepositoryCustom {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public Stream<Booking> streamAllByCampsiteId(long campsiteId, int fetchSize) {
+    return entityManager.createQuery("select new com.upgrade.volcanocampsitereservation.domain.Booking(b.email,"
+            + " b.fullName, b.arrivalDate, b.departureDate, b.id, b.campsiteId) from Booking b"
+            + " where b.campsiteId = :campsiteId order by b.arrivalDate, b.id", Booking.class)
+        .setParameter("campsiteId", campsiteId)
+        .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+        .getResultStream();
+  }
+}
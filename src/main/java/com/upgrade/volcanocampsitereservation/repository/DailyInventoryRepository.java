@@ -0,0 +1,46 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.DailyInventoryDto;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DailyInventoryRepository
+    extends JpaRepository<DailyInventoryDto, DailyInventoryDto.Key>, DailyInventoryRepositoryCustom {
+
+  // Conditional decrement: the row lock is taken by the update itself, without a select for update. Returns the
+  // number of claimed days, a day that is sold out (or not provisioned) is not claimed
+  @Modifying
+  @Query("update #{#entityName} i set i.remaining = i.remaining - 1"
+      + " where i.campsiteId = ?1 and i.date in ?2 and i.remaining > 0")
+  int claim(long campsiteId, Collection<LocalDate> dates);
+
+  @Modifying
+  @Query("update #{#entityName} i set i.remaining = i.remaining + 1 where i.campsiteId = ?1 and i.date in ?2")
+  int release(long campsiteId, Collection<LocalDate> dates);
+
+  @Query("select i.date from #{#entityName} i where i.campsiteId = ?1 and i.date in ?2 and i.remaining = ?3"
+      + " order by i.date")
+  List<LocalDate> findDatesWithRemaining(long campsiteId, Collection<LocalDate> dates, int remaining);
+
+  // 1 scan of the range of the primary key
+  @Query("select i.date from #{#entityName} i where i.campsiteId = ?1 and i.date >= ?2 and i.date < ?3"
+      + " and i.remaining > 0 order by i.date")
+  List<LocalDate> findAvailableDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive);
+
+  @Query("select i.date from #{#entityName} i where i.campsiteId = ?1 and i.date >= ?2 and i.date < ?3"
+      + " and i.remaining = 0")
+  List<LocalDate> findSoldOutDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive);
+
+  @Query("select i.date from #{#entityName} i where i.campsiteId = ?1 and i.remaining = 0")
+  List<LocalDate> findSoldOutDates(long campsiteId);
+
+  @Query("select i.date from #{#entityName} i where i.campsiteId = ?1 and i.date >= ?2 and i.date < ?3")
+  List<LocalDate> findProvisionedDatesBetween(long campsiteId, LocalDate startInclusive, LocalDate endExclusive);
+}
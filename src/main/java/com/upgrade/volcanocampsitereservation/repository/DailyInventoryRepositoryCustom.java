@@ -0,0 +1,15 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.DailyInventoryDto;
+
+import java.util.Collection;
+
+public interface DailyInventoryRepositoryCustom {
+
+  /**
+   * Inserts the days without checking whether they exist (unlike {@code saveAll()}, which would overwrite the
+   * remaining capacity of an existing day).
+   * <p>Throws a DataIntegrityViolationException if a day is already provisioned.</p>
+   */
+  void insertAll(Collection<DailyInventoryDto> days);
+}
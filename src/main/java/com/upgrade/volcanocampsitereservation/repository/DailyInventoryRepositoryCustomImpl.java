@@ -0,0 +1,19 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.DailyInventoryDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+
+public class DailyInventoryRepositoryCustomImpl implements DailyInventoryRepositoryCustom {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void insertAll(Collection<DailyInventoryDto> days) {
+    days.forEach(entityManager::persist);
+    entityManager.flush();
+  }
+}
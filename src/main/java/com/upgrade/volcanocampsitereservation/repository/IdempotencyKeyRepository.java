@@ -0,0 +1,17 @@
+package com.upgrade.volcanocampsitereservation.repository;
+
+import com.upgrade.volcanocampsitereservation.dto.IdempotencyKeyDto;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyDto, String> {
+
+  @Modifying
+  @Query("delete from #{#entityName} k where k.createdAt < ?1")
+  int deleteAllCreatedBefore(Instant createdAt);
+}
@@ -0,0 +1,340 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityChange;
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the reserved dates, partitioned by campsite.
+ * <p>Each reserved date of a campsite is a bit of a {@link BitSet} indexed by the epoch day of the date, so that the
+ * availabilities can be computed without a database round trip. Each campsite has its own bitmap and its own lock, so
+ * the bookings of a campsite never block the readers of another campsite.</p>
+ * <p>The index is loaded from the {@link BookingDateDto} table when the application is ready, and is updated after
+ * the commit of every transaction that reserves or releases dates (See {@link BookingChangedEvent}). The reserved
+ * dates of an inventory campsite are its sold out days, read from the {@link InventoryService}.</p>
+ * <p>The listeners of 2 transactions can run in any order after their commits. Each change takes a sequence number
+ * before the commit, and each day keeps the sequence of the last change applied to it: an older change of the day is
+ * ignored.</p>
+ * <p>The dates released by a transaction in progress are marked until the end of the transaction (See
+ * {@link #markReleasing}), so that {@link #findCertainlyReservedDates} never returns a date that may be free in the
+ * database.</p>
+ */
+@Component
+@Slf4j
+public class AvailabilityIndex {
+
+  private final BookingDateRepository bookingDateRepository;
+
+  private final InventoryService inventoryService;
+
+  private final ConcurrentMap<Long, CampsiteIndex> campsiteIndexes = new ConcurrentHashMap<>();
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private volatile boolean loaded;
+
+  public AvailabilityIndex(BookingDateRepository bookingDateRepository, InventoryService inventoryService) {
+    this.bookingDateRepository = bookingDateRepository;
+    this.inventoryService = inventoryService;
+  }
+
+  /**
+   * (Re)loads the index from the {@link BookingDateDto} table, and from the inventory for the inventory campsites.
+   * <p>The dates of each campsite are read while the index of the campsite is locked, so a change committed before
+   * the read and applied before the load is not overwritten by an older snapshot.</p>
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    final var campsiteIds = new HashSet<>(bookingDateRepository.findCampsiteIds());
+    campsiteIds.addAll(inventoryService.getCampsiteIds());
+    // The campsites without reserved date anymore are cleared
+    campsiteIds.addAll(campsiteIndexes.keySet());
+    var count = 0;
+    for (var campsiteId : campsiteIds) {
+      final var campsiteIndex = campsiteIndex(campsiteId);
+      campsiteIndex.lock.writeLock().lock();
+      try {
+        final var dates = inventoryService.isInventory(campsiteId)
+            ? inventoryService.findSoldOutDates(campsiteId)
+            : bookingDateRepository.findDatesByCampsiteId(campsiteId);
+        campsiteIndex.reservedDays.clear();
+        dates.forEach(date -> campsiteIndex.reservedDays.set(bitIndex(date)));
+        count += dates.size();
+      } finally {
+        campsiteIndex.lock.writeLock().unlock();
+      }
+    }
+    loaded = true;
+    log.info("Loaded {} reserved dates of {} campsites in the availability index", count, campsiteIds.size());
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Takes the sequence number of the change before the commit, and applies the change after the commit.
+   * <p>The database serializes the transactions that reserve or release the same date: a transaction writes the date
+   * after the commit of the previous one, so their sequence numbers follow the order of their commits.</p>
+   */
+  @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+  public void onBookingChanged(BookingChangedEvent event) {
+    if (event.isRemote()) {
+      // Already applied by refresh()
+      return;
+    }
+    final var changeSequence = sequence.incrementAndGet();
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public int getOrder() {
+        // Applied before the other listeners (e.g. ReservationStateVersion)
+        return Ordered.HIGHEST_PRECEDENCE;
+      }
+
+      @Override
+      public void afterCommit() {
+        apply(event, changeSequence);
+      }
+    });
+  }
+
+  /**
+   * Applies the change to the days whose last applied change is older.
+   */
+  void apply(BookingChangedEvent event, long changeSequence) {
+    final var campsiteIndex = campsiteIndex(event.getCampsiteId());
+    campsiteIndex.lock.writeLock().lock();
+    try {
+      // The released dates are cleared first because an updated booking can keep some of its dates
+      event.getReleasedDates().forEach(date -> campsiteIndex.update(date, false, changeSequence));
+      event.getReservedDates().forEach(date -> campsiteIndex.update(date, true, changeSequence));
+    } finally {
+      campsiteIndex.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Reloads the dates of the campsite between startInclusive and endExclusive from the {@link BookingDateDto} table,
+   * or from the sold out days of the inventory if the campsite is an inventory campsite.
+   * <p>Must be called inside a transaction. The database is read while the index of the campsite is locked, so a
+   * local change committed in the meantime is applied after the refresh.</p>
+   *
+   * @return the dates that flipped between reserved and available.
+   */
+  public AvailabilityChange refresh(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    final var startDay = startInclusive.toEpochDay();
+    final var available = new ArrayList<LocalDate>();
+    final var reserved = new ArrayList<LocalDate>();
+    final var campsiteIndex = campsiteIndex(campsiteId);
+    campsiteIndex.lock.writeLock().lock();
+    try {
+      final var reservedInDatabase = new BitSet();
+      findReservedDates(campsiteId, startInclusive, endExclusive).forEach(date ->
+          reservedInDatabase.set(Math.toIntExact(date.toEpochDay() - startDay)));
+      for (var day = startDay; day < endExclusive.toEpochDay(); day++) {
+        final var reservedDay = reservedInDatabase.get((int) (day - startDay));
+        if (reservedDay != campsiteIndex.isReserved(day)) {
+          campsiteIndex.reservedDays.set(Math.toIntExact(day), reservedDay);
+          (reservedDay ? reserved : available).add(LocalDate.ofEpochDay(day));
+        }
+      }
+    } finally {
+      campsiteIndex.lock.writeLock().unlock();
+    }
+    return AvailabilityChange.builder()
+        .available(available)
+        .reserved(reserved)
+        .build();
+  }
+
+  /**
+   * Marks the dates as being released by the current transaction until its end, committed or rolled back. The index
+   * is updated after the commit (See {@link #onBookingChanged}) and before the mark is removed.
+   * <p>Must be called inside a transaction, before its commit.</p>
+   */
+  public void markReleasing(long campsiteId, Collection<LocalDate> dates) {
+    if (dates.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
+    }
+    final var campsiteIndex = campsiteIndex(campsiteId);
+    campsiteIndex.updateReleasingDays(dates, 1);
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        campsiteIndex.updateReleasingDays(dates, -1);
+      }
+    });
+  }
+
+  /**
+   * Returns the dates that are reserved in the index and are not being released by a transaction in progress: on a
+   * single replica, these dates are reserved in the database. The other dates may be available.
+   */
+  public List<LocalDate> findCertainlyReservedDates(long campsiteId, Collection<LocalDate> dates) {
+    List<LocalDate> reservedDates = null;
+    final var campsiteIndex = campsiteIndex(campsiteId);
+    campsiteIndex.lock.readLock().lock();
+    try {
+      for (var date : dates) {
+        final var day = date.toEpochDay();
+        if (campsiteIndex.isReserved(day) && !campsiteIndex.releasingDays.containsKey(day)) {
+          if (reservedDates == null) {
+            reservedDates = new ArrayList<>();
+          }
+          reservedDates.add(date);
+        }
+      }
+    } finally {
+      campsiteIndex.lock.readLock().unlock();
+    }
+    return reservedDates == null ? List.of() : reservedDates;
+  }
+
+  /**
+   * Returns the available dates of the campsite between startInclusive and endExclusive.
+   */
+  public List<LocalDate> getAvailabilities(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    final var startDay = startInclusive.toEpochDay();
+    final var endDay = endExclusive.toEpochDay();
+    final var availableDates = new ArrayList<LocalDate>((int) Math.max(0, endDay - startDay));
+    final var campsiteIndex = campsiteIndex(campsiteId);
+    campsiteIndex.lock.readLock().lock();
+    try {
+      for (var day = startDay; day < endDay; day++) {
+        if (!campsiteIndex.isReserved(day)) {
+          availableDates.add(LocalDate.ofEpochDay(day));
+        }
+      }
+    } finally {
+      campsiteIndex.lock.readLock().unlock();
+    }
+    return availableDates;
+  }
+
+  /**
+   * Returns the free intervals of the campsite between startInclusive and endExclusive.
+   * <p>The bitmap is scanned run by run, so the cost depends on the number of bookings, not on the number of days.</p>
+   */
+  public List<AvailabilityInterval> getFreeIntervals(long campsiteId, LocalDate startInclusive,
+                                                     LocalDate endExclusive) {
+    final var endDay = endExclusive.toEpochDay();
+    final var intervals = new ArrayList<AvailabilityInterval>();
+    final var campsiteIndex = campsiteIndex(campsiteId);
+    campsiteIndex.lock.readLock().lock();
+    try {
+      var day = startInclusive.toEpochDay();
+      while (day < endDay) {
+        final var reservedDay = campsiteIndex.nextReservedDay(day, endDay);
+        if (reservedDay > day) {
+          intervals.add(AvailabilityInterval.builder()
+              .start(LocalDate.ofEpochDay(day))
+              .endExclusive(LocalDate.ofEpochDay(reservedDay))
+              .build());
+        }
+        day = campsiteIndex.nextFreeDay(reservedDay, endDay);
+      }
+    } finally {
+      campsiteIndex.lock.readLock().unlock();
+    }
+    return intervals;
+  }
+
+  private List<LocalDate> findReservedDates(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    if (inventoryService.isInventory(campsiteId)) {
+      // The booking dates of an inventory campsite are counted, not inserted
+      return inventoryService.findSoldOutDates(campsiteId, startInclusive, endExclusive);
+    }
+    try (var bookingDates = bookingDateRepository.quickFindAllDatesBetween(campsiteId, startInclusive,
+        endExclusive)) {
+      return bookingDates.map(BookingDateDto::getDate).collect(Collectors.toList());
+    }
+  }
+
+  private CampsiteIndex campsiteIndex(long campsiteId) {
+    return campsiteIndexes.computeIfAbsent(campsiteId, id -> new CampsiteIndex());
+  }
+
+  private static int bitIndex(LocalDate date) {
+    return Math.toIntExact(date.toEpochDay());
+  }
+
+  private static final class CampsiteIndex {
+
+    private final BitSet reservedDays = new BitSet();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Sequence of the last change applied to each epoch day
+    private final HashMap<Long, Long> appliedSequences = new HashMap<>();
+
+    // Number of transactions in progress that release each epoch day
+    private final HashMap<Long, Integer> releasingDays = new HashMap<>();
+
+    private void updateReleasingDays(Collection<LocalDate> dates, int delta) {
+      lock.writeLock().lock();
+      try {
+        dates.forEach(date -> releasingDays.merge(date.toEpochDay(), delta,
+            (count, increment) -> count + increment == 0 ? null : count + increment));
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void update(LocalDate date, boolean reserved, long changeSequence) {
+      final var day = date.toEpochDay();
+      final var appliedSequence = appliedSequences.get(day);
+      if (appliedSequence != null && appliedSequence >= changeSequence) {
+        // A newer change of the day was committed after this one, and applied first
+        return;
+      }
+      appliedSequences.put(day, changeSequence);
+      reservedDays.set(Math.toIntExact(day), reserved);
+    }
+
+    private long nextReservedDay(long fromDay, long endDay) {
+      final var from = Math.max(fromDay, 0);
+      if (from >= endDay || from > Integer.MAX_VALUE) {
+        return endDay;
+      }
+      final var next = reservedDays.nextSetBit((int) from);
+      return next < 0 ? endDay : Math.min(next, endDay);
+    }
+
+    private long nextFreeDay(long fromDay, long endDay) {
+      if (fromDay >= endDay) {
+        return endDay;
+      }
+      return Math.min(reservedDays.nextClearBit((int) fromDay), endDay);
+    }
+
+    private boolean isReserved(long epochDay) {
+      // Dates before 1970-01-01 cannot be reserved
+      return epochDay >= 0 && epochDay <= Integer.MAX_VALUE && reservedDays.get((int) epochDay);
+    }
+  }
+}
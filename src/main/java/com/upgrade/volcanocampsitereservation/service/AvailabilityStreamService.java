@@ -0,0 +1,305 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityChange;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.exception.ServiceUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the availability changes to the subscribers with Server-Sent Events.
+ * <p>A subscriber first receives a "snapshot" event with the available dates of its campsite and date range, then a
+ * "change" event (See {@link AvailabilityChange}) every time dates of its campsite and range are reserved or
+ * released.</p>
+ * <p>The changes are published after the commit of the booking transactions. Each change takes a version number, and
+ * is dispatched to the subscribers by a dedicated thread in the order of the versions. The listeners of 2
+ * transactions can run in any order after their commits, so a change event does not carry the delta of its
+ * transaction: it carries the current state of the changed days, read when the change is dispatched. The last event of
+ * a day is always its latest state, whatever the order of the listeners. They are pushed to a bounded
+ * queue per subscriber and sent by a dedicated thread pool, so neither the subscribers nor a slow subscriber block a
+ * booking transaction. A subscriber whose queue is full is disconnected: the browser reconnects and receives a new
+ * snapshot.</p>
+ * <p>The snapshot is read without lock, after the version of the last change: it contains the changes up to this
+ * version, which are not sent to the subscriber, and the later changes are queued after the snapshot.</p>
+ */
+@Service
+@Slf4j
+public class AvailabilityStreamService {
+
+  private static final String SNAPSHOT_EVENT = "snapshot";
+
+  private static final String CHANGE_EVENT = "change";
+
+  private final BookingService bookingService;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  // Held for O(1) operations only: the snapshot is read and the changes are dispatched outside of this lock
+  private final Lock versionLock = new ReentrantLock();
+
+  // Guarded by versionLock
+  private long version;
+
+  // A single thread, so the changes are dispatched in the order of their versions
+  private final ExecutorService dispatcher;
+
+  private final ExecutorService sender;
+
+  public AvailabilityStreamService(BookingService bookingService, ApplicationConfiguration rsvpConfig) {
+    this.bookingService = bookingService;
+    this.rsvpConfig = rsvpConfig;
+    this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+      final var thread = new Thread(runnable, "availability-stream-dispatcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.sender = Executors.newFixedThreadPool(rsvpConfig.getAvailabilityStreamSenderThreads(), runnable -> {
+      final var thread = new Thread(runnable, "availability-stream");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    dispatcher.shutdownNow();
+    sender.shutdownNow();
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+  }
+
+  /**
+   * Subscribes to the availability changes of the campsite between startInclusive and endExclusive.
+   *
+   * @throws ServiceUnavailableException if the maximum number of connections is reached.
+   */
+  public SseEmitter subscribe(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    final var emitter = new SseEmitter(rsvpConfig.getAvailabilityStreamTimeout().toMillis());
+    final var subscriber = new Subscriber(emitter, campsiteId, startInclusive, endExclusive,
+        new ArrayBlockingQueue<>(rsvpConfig.getAvailabilityStreamBufferSize()));
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onError(throwable -> subscribers.remove(subscriber));
+    final long snapshotVersion;
+    versionLock.lock();
+    try {
+      if (subscribers.size() >= rsvpConfig.getAvailabilityStreamMaxConnections()) {
+        throw new ServiceUnavailableException("Too many connections to the availability stream");
+      }
+      // The changes after this version are dispatched to the subscriber
+      subscribers.add(subscriber);
+      snapshotVersion = version;
+    } finally {
+      versionLock.unlock();
+    }
+    final List<LocalDate> snapshot;
+    try {
+      // Applied to the index (or committed) before their versions were taken: the changes up to snapshotVersion are
+      // in the snapshot
+      snapshot = bookingService.getAvailabilities(campsiteId, startInclusive, endExclusive);
+    } catch (RuntimeException e) {
+      subscribers.remove(subscriber);
+      throw e;
+    }
+    subscriber.queueSnapshot(snapshot, snapshotVersion);
+    log.info("Subscribed to the availabilities of the campsite {} between {} and {} ({} subscribers)",
+        campsiteId, startInclusive, endExclusive, subscribers.size());
+    return emitter;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Takes the version of the change on the thread of the committed transaction, and hands the change over to the
+   * dispatcher. Applied after the {@link AvailabilityIndex}, so that a snapshot read after the version contains the
+   * change.
+   */
+  @Order
+  @TransactionalEventListener
+  public void onBookingChanged(BookingChangedEvent event) {
+    if (event.getReleasedDates().isEmpty() && event.getReservedDates().isEmpty()) {
+      return;
+    }
+    versionLock.lock();
+    try {
+      final var changeVersion = ++version;
+      if (!subscribers.isEmpty()) {
+        dispatcher.execute(() -> dispatch(event, changeVersion));
+      }
+    } finally {
+      versionLock.unlock();
+    }
+  }
+
+  private void dispatch(BookingChangedEvent event, long changeVersion) {
+    if (subscribers.stream().noneMatch(subscriber -> subscriber.campsiteId == event.getCampsiteId())) {
+      return;
+    }
+    final var dates = new TreeSet<>(event.getReleasedDates());
+    dates.addAll(event.getReservedDates());
+    final Set<LocalDate> available;
+    try {
+      // Read after the changes of the previous versions: the state is never older than the one already sent
+      available = new HashSet<>(bookingService.getAvailabilities(event.getCampsiteId(), dates.first(),
+          dates.last().plusDays(1)));
+    } catch (RuntimeException e) {
+      log.warn("Cannot read the availabilities of the campsite {}, disconnecting its subscribers",
+          event.getCampsiteId(), e);
+      subscribers.stream()
+          .filter(subscriber -> subscriber.campsiteId == event.getCampsiteId())
+          .forEach(subscriber -> {
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+          });
+      return;
+    }
+    available.retainAll(dates);
+    final var reserved = new HashSet<>(dates);
+    reserved.removeAll(available);
+    subscribers.forEach(subscriber -> {
+      if (subscriber.campsiteId != event.getCampsiteId()) {
+        return;
+      }
+      final var change = AvailabilityChange.builder()
+          .available(subscriber.filter(available))
+          .reserved(subscriber.filter(reserved))
+          .build();
+      if (!change.getAvailable().isEmpty() || !change.getReserved().isEmpty()) {
+        subscriber.queueChange(change, changeVersion);
+      }
+    });
+  }
+
+  private void enqueue(Subscriber subscriber, String name, Object data) {
+    if (!subscriber.queue.offer(new StreamEvent(name, data))) {
+      log.warn("Disconnecting a slow subscriber of the availability stream");
+      subscribers.remove(subscriber);
+      subscriber.emitter.complete();
+      return;
+    }
+    if (subscriber.sending.compareAndSet(false, true)) {
+      sender.execute(() -> send(subscriber));
+    }
+  }
+
+  private void send(Subscriber subscriber) {
+    try {
+      StreamEvent event;
+      while ((event = subscriber.queue.poll()) != null) {
+        subscriber.emitter.send(SseEmitter.event().name(event.name).data(event.data));
+      }
+    } catch (IOException | IllegalStateException e) {
+      // The connection is closed, the emitter callbacks are called by the servlet container
+      log.debug("Cannot send to a subscriber of the availability stream", e);
+      subscribers.remove(subscriber);
+      return;
+    } finally {
+      subscriber.sending.set(false);
+    }
+    // An event could have been queued after the last poll and before the flag was reset
+    if (!subscriber.queue.isEmpty() && subscriber.sending.compareAndSet(false, true)) {
+      sender.execute(() -> send(subscriber));
+    }
+  }
+
+  private final class Subscriber {
+    private final SseEmitter emitter;
+    private final long campsiteId;
+    private final LocalDate startInclusive;
+    private final LocalDate endExclusive;
+    private final Queue<StreamEvent> queue;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    // Only contended by the subscription and the dispatcher
+    private final Lock lock = new ReentrantLock();
+    // Guarded by lock: -1 until the snapshot is queued
+    private long snapshotVersion = -1;
+    // Guarded by lock: the changes dispatched before the snapshot is queued
+    private final List<VersionedChange> pendingChanges = new ArrayList<>();
+
+    private Subscriber(SseEmitter emitter, long campsiteId, LocalDate startInclusive, LocalDate endExclusive,
+                       Queue<StreamEvent> queue) {
+      this.emitter = emitter;
+      this.campsiteId = campsiteId;
+      this.startInclusive = startInclusive;
+      this.endExclusive = endExclusive;
+      this.queue = queue;
+    }
+
+    private void queueSnapshot(List<LocalDate> snapshot, long version) {
+      lock.lock();
+      try {
+        enqueue(this, SNAPSHOT_EVENT, snapshot);
+        snapshotVersion = version;
+        pendingChanges.forEach(pendingChange -> queueChange(pendingChange.change, pendingChange.version));
+        pendingChanges.clear();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void queueChange(AvailabilityChange change, long version) {
+      lock.lock();
+      try {
+        if (snapshotVersion < 0) {
+          pendingChanges.add(new VersionedChange(change, version));
+        } else if (version > snapshotVersion) {
+          enqueue(this, CHANGE_EVENT, change);
+        }
+        // Otherwise the change is already in the snapshot
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private List<LocalDate> filter(Set<LocalDate> dates) {
+      return dates.stream()
+          .filter(date -> !date.isBefore(startInclusive) && date.isBefore(endExclusive))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static final class VersionedChange {
+    private final AvailabilityChange change;
+    private final long version;
+
+    private VersionedChange(AvailabilityChange change, long version) {
+      this.change = change;
+      this.version = version;
+    }
+  }
+
+  private static final class StreamEvent {
+    private final String name;
+    private final Object data;
+
+    private StreamEvent(String name, Object data) {
+      this.name = name;
+      this.data = data;
+    }
+  }
+}
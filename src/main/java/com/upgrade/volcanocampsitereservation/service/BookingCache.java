@@ -0,0 +1,130 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.config.BookingCacheMode;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the bookings by id, in front of {@link BookingRepository#findDetachedById} (See
+ * {@code campsite.booking-cache-*}).
+ * <p>A booking is evicted after the commit of a change whose version is newer than the cached one, and after its
+ * deletion. A booking read before a change but cached after its eviction is detected with a generation counter, and
+ * removed. The consistency with the other replicas depends on the {@link BookingCacheMode}.</p>
+ * <p>The cached bookings are detached copies: the callers get their own copy, and cannot modify the cache. The hit
+ * rate is exported by the metrics {@code cache.gets}, {@code cache.evictions} and {@code cache.size} with the tag
+ * {@code cache=bookings}.</p>
+ */
+@Component
+@Slf4j
+public class BookingCache {
+
+  private final BookingRepository bookingRepository;
+
+  private final BookingCacheMode mode;
+
+  private final Cache<Long, BookingDto> bookings;
+
+  // Incremented before every eviction
+  private final AtomicLong generation = new AtomicLong();
+
+  public BookingCache(BookingRepository bookingRepository,
+                      ApplicationConfiguration rsvpConfig,
+                      MeterRegistry meterRegistry) {
+    this.bookingRepository = bookingRepository;
+    this.mode = rsvpConfig.getBookingCacheMode();
+    if (mode == BookingCacheMode.LOCAL && rsvpConfig.isChangeLogEnabled()) {
+      // The changes of the other replicas are only read at the next poll of the change log: a stale booking would be
+      // returned in the meantime, and an update would be validated against it
+      throw new IllegalStateException("The booking cache mode local is only consistent with a single replica,"
+          + " use the mode validated with campsite.change-log-enabled");
+    }
+    this.bookings = CacheBuilder.newBuilder()
+        .maximumSize(rsvpConfig.getBookingCacheSize())
+        .expireAfterWrite(rsvpConfig.getBookingCacheTtl())
+        .recordStats()
+        .build();
+    GuavaCacheMetrics.monitor(meterRegistry, bookings, "bookings");
+  }
+
+  /**
+   * Returns a copy of the booking with the id. The database is not queried when the booking is cached in the
+   * {@link BookingCacheMode#LOCAL} mode, and only its version is queried in the {@link BookingCacheMode#VALIDATED}
+   * mode.
+   */
+  public Optional<BookingDto> findById(long id) {
+    if (mode == BookingCacheMode.DISABLED) {
+      return bookingRepository.findDetachedById(id);
+    }
+    final var cached = bookings.getIfPresent(id);
+    if (cached != null && (mode == BookingCacheMode.LOCAL
+        || bookingRepository.findVersionById(id).filter(version -> version == cached.getVersion()).isPresent())) {
+      return Optional.of(copy(cached));
+    }
+    if (cached != null) {
+      // Modified or deleted by another replica
+      evict(id);
+    }
+    final var loadGeneration = generation.get();
+    final var bookingDto = bookingRepository.findDetachedById(id);
+    if (bookingDto.isEmpty()) {
+      return bookingDto;
+    }
+    bookings.put(id, copy(bookingDto.get()));
+    if (generation.get() != loadGeneration) {
+      // A booking changed during the query: the cached booking may be stale
+      bookings.invalidate(id);
+    }
+    return bookingDto;
+  }
+
+  /**
+   * Evicts the booking whatever its version, e.g. after an optimistic locking failure.
+   */
+  public void evict(long id) {
+    generation.incrementAndGet();
+    bookings.invalidate(id);
+  }
+
+  @TransactionalEventListener
+  public void onBookingChanged(BookingChangedEvent event) {
+    if (event.getBookingId() == 0) {
+      // The dates of a hold
+      return;
+    }
+    if (event.isRemote() || event.getVersion() == BookingChangedEvent.DELETED) {
+      // The version of a remote change is unknown
+      evict(event.getBookingId());
+      return;
+    }
+    generation.incrementAndGet();
+    bookings.asMap().computeIfPresent(event.getBookingId(),
+        (id, cached) -> cached.getVersion() < event.getVersion() ? null : cached);
+  }
+
+  /**
+   * Returns a detached copy of the booking.
+   */
+  static BookingDto copy(BookingDto bookingDto) {
+    return BookingDto.builder()
+        .id(bookingDto.getId())
+        .version(bookingDto.getVersion())
+        .campsiteId(bookingDto.getCampsiteId())
+        .email(bookingDto.getEmail())
+        .fullName(bookingDto.getFullName())
+        .arrivalDate(bookingDto.getArrivalDate())
+        .departureDate(bookingDto.getDepartureDate())
+        .build();
+  }
+}
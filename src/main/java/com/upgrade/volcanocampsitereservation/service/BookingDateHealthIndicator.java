@@ -0,0 +1,59 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reports the orphan booking dates (See {@link BookingService#findOrphanDates()}) in the health endpoint.
+ * <p>An orphan date is reserved forever, but the service is still able to serve the requests: the status
+ * {@code ORPHAN_DATES} is ordered after DOWN and OUT_OF_SERVICE (See {@code management.endpoint.health.status.order}).
+ * </p>
+ * <p>The search of the orphan dates scans the booking dates: it is run every
+ * {@code campsite.orphan-date-check-interval}, and the health check only reports its last result.</p>
+ */
+@Component
+@Slf4j
+public class BookingDateHealthIndicator extends AbstractHealthIndicator {
+
+  static final Status ORPHAN_DATES = new Status("ORPHAN_DATES", "Booking dates without booking");
+
+  private final BookingService bookingService;
+
+  // Null until the first check
+  private volatile List<BookingDateDto> orphanDates;
+
+  public BookingDateHealthIndicator(BookingService bookingService) {
+    this.bookingService = bookingService;
+  }
+
+  /**
+   * Searches the orphan dates. On failure, the result of the previous check is kept.
+   */
+  @Scheduled(fixedDelayString = "${campsite.orphan-date-check-interval:PT10M}")
+  public void check() {
+    try {
+      orphanDates = bookingService.findOrphanDates();
+    } catch (RuntimeException e) {
+      log.warn("The search of the orphan dates failed", e);
+    }
+  }
+
+  @Override
+  protected void doHealthCheck(Health.Builder builder) {
+    final var orphanDates = this.orphanDates;
+    if (orphanDates == null) {
+      builder.unknown();
+    } else if (orphanDates.isEmpty()) {
+      builder.up();
+    } else {
+      builder.status(ORPHAN_DATES).withDetail("orphanDates", orphanDates);
+    }
+  }
+}
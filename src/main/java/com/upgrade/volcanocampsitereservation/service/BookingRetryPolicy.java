@@ -0,0 +1,103 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries the booking transactions that failed because of a transient lock or serialization failure.
+ * <p>A {@link ConcurrencyFailureException} (lock timeout, deadlock, serialization failure...) only means that the
+ * transaction was rolled back because of a concurrent transaction: the dates may be free, and a new attempt may
+ * succeed. The attempts are retried with an exponential backoff with full jitter (a random delay between 0 and the
+ * backoff), so that the requests that raced for the same dates do not collide again, within the time budget of the
+ * request.</p>
+ * <p>A real conflict is never retried: a {@link DataIntegrityViolationException} means that a date is already
+ * reserved, and an {@link OptimisticLockingFailureException} means that the booking was modified since it was read by
+ * the client.</p>
+ * <p>The retries are counted by the metrics {@code campsite.booking.retries} and
+ * {@code campsite.booking.retries.exhausted}, tagged by operation.</p>
+ */
+@Component
+@Slf4j
+public class BookingRetryPolicy {
+
+  private static final String RETRIES_METRIC = "campsite.booking.retries";
+
+  private static final String EXHAUSTED_METRIC = "campsite.booking.retries.exhausted";
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final MeterRegistry meterRegistry;
+
+  public BookingRetryPolicy(ApplicationConfiguration rsvpConfig, MeterRegistry meterRegistry) {
+    this.rsvpConfig = rsvpConfig;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Executes the attempts of the operation until one succeeds, fails with a non-transient exception, or the maximum
+   * number of attempts or the time budget is exhausted. The last exception is rethrown.
+   *
+   * @param operation the name of the operation, used as the tag of the metrics.
+   */
+  public <T> T execute(String operation, Supplier<T> attempt) {
+    final var deadline = System.nanoTime() + rsvpConfig.getRetryTimeBudget().toNanos();
+    for (int attempts = 1; ; attempts++) {
+      try {
+        return attempt.get();
+      } catch (RuntimeException e) {
+        if (!isTransient(e)) {
+          throw e;
+        }
+        final var backoffNanos = backoffNanos(attempts);
+        if (attempts >= rsvpConfig.getRetryMaxAttempts() || System.nanoTime() + backoffNanos - deadline >= 0) {
+          log.warn("Giving up the operation {} after {} attempts", operation, attempts);
+          counter(EXHAUSTED_METRIC, operation).increment();
+          throw e;
+        }
+        log.info("Retrying the operation {} after a transient failure ({} attempts): {}",
+            operation, attempts, e.getMessage());
+        counter(RETRIES_METRIC, operation).increment();
+        sleep(backoffNanos);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static boolean isTransient(Throwable throwable) {
+    // Includes CannotAcquireLockException, DeadlockLoserDataAccessException, CannotSerializeTransactionException
+    return throwable instanceof ConcurrencyFailureException
+        && !(throwable instanceof OptimisticLockingFailureException);
+  }
+
+  private long backoffNanos(int attempts) {
+    final var maxBackoffNanos = rsvpConfig.getRetryMaxBackoff().toNanos();
+    // Bounded shift, the backoff is capped anyway
+    final var backoffNanos = Math.min(maxBackoffNanos,
+        rsvpConfig.getRetryInitialBackoff().toNanos() << Math.min(attempts - 1, 20));
+    return ThreadLocalRandom.current().nextLong(backoffNanos + 1);
+  }
+
+  private Counter counter(String name, String operation) {
+    return meterRegistry.counter(name, "operation", operation);
+  }
+
+  private static void sleep(long nanos) {
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a retry", e);
+    }
+  }
+}
@@ -1,21 +1,45 @@
 package com.upgrade.volcanocampsitereservation.service;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.config.ConcurrencyStrategy;
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
+import com.upgrade.volcanocampsitereservation.domain.BatchBookingResult;
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.BookingCursor;
+import com.upgrade.volcanocampsitereservation.domain.BookingFilter;
 import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
 import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
 import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
 import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
 import com.upgrade.volcanocampsitereservation.utils.Utils;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,82 +47,563 @@ import java.util.stream.Stream;
 @Slf4j
 public class BookingService {
 
+  // Bounds of the unbounded date filters, that every database can store
+  private static final LocalDate MIN_DATE = LocalDate.EPOCH;
+
+  private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
   private final BookingRepository bookingRepository;
 
   private final BookingDateRepository bookingDateRepository;
 
-  public BookingService(BookingRepository bookingRepository, BookingDateRepository bookingDateRepository) {
+  private final AvailabilityIndex availabilityIndex;
+
+  private final InventoryService inventoryService;
+
+  private final BookingCache bookingCache;
+
+  private final DateLockManager dateLockManager;
+
+  private final BookingRetryPolicy retryPolicy;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final TransactionTemplate serializableTransaction;
+
+  private final TransactionTemplate readCommittedTransaction;
+
+  private final TransactionTemplate readOnlyTransaction;
+
+  public BookingService(BookingRepository bookingRepository,
+                        BookingDateRepository bookingDateRepository,
+                        AvailabilityIndex availabilityIndex,
+                        InventoryService inventoryService,
+                        BookingCache bookingCache,
+                        DateLockManager dateLockManager,
+                        BookingRetryPolicy retryPolicy,
+                        ApplicationConfiguration rsvpConfig,
+                        ApplicationEventPublisher eventPublisher,
+                        PlatformTransactionManager transactionManager) {
     this.bookingRepository = bookingRepository;
     this.bookingDateRepository = bookingDateRepository;
+    this.availabilityIndex = availabilityIndex;
+    this.inventoryService = inventoryService;
+    this.bookingCache = bookingCache;
+    this.dateLockManager = dateLockManager;
+    this.retryPolicy = retryPolicy;
+    this.rsvpConfig = rsvpConfig;
+    this.eventPublisher = eventPublisher;
+    this.serializableTransaction = new TransactionTemplate(transactionManager);
+    this.serializableTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    this.readCommittedTransaction = new TransactionTemplate(transactionManager);
+    this.readCommittedTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
   }
 
-  @Transactional(isolation = Isolation.SERIALIZABLE)
   public BookingDto add(BookingDto bookingDto) {
+    return add(bookingDto, addedBookingDto -> {
+    });
+  }
+
+  /**
+   * Adds the booking.
+   *
+   * @param onAdded called with the added booking in the transaction of the booking, to write related entities.
+   */
+  public BookingDto add(BookingDto bookingDto, Consumer<BookingDto> onAdded) {
     log.info("Adding {}", bookingDto);
-    return addBooking(bookingDto);
+    final var dates = toDates(bookingDto.bookingDates());
+    rejectCertainConflicts(bookingDto.getCampsiteId(), dates);
+    return retryPolicy.execute("add", () -> executeWrite(bookingDto.getCampsiteId(), dates, () -> {
+      // The id generated by a rolled back attempt is discarded
+      bookingDto.setId(0);
+      // The id of the booking is generated first, the booking dates are owned by the booking
+      final var addedBookingDto = bookingRepository.save(bookingDto);
+      final var unavailableDates = reserveDates(addedBookingDto.getCampsiteId(), addedBookingDto.getId(),
+          toDates(addedBookingDto.bookingDates()));
+      log.info("Added {}", addedBookingDto);
+      onAdded.accept(addedBookingDto);
+      eventPublisher.publishEvent(BookingChangedEvent.builder()
+          .bookingId(addedBookingDto.getId())
+          .campsiteId(addedBookingDto.getCampsiteId())
+          .reservedDates(unavailableDates)
+          .version(addedBookingDto.getVersion())
+          .email(addedBookingDto.getEmail())
+          .build());
+      return addedBookingDto;
+    }));
   }
 
-  private BookingDto addBooking(BookingDto bookingDto) {
-    // Get dates that can be reserved by other bookings between the arrival and departure dates
-    // Could throw CannotAcquireLockException
-    final var bookingDatesBetween = bookingDateRepository.findAllDatesBetween(
-        bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
-    final var bookingDates = convertBookingDateStreamToList(bookingDatesBetween);
+  /**
+   * Rejects the booking without a write transaction nor a lock when a date is certainly reserved (See
+   * {@link AvailabilityIndex#findCertainlyReservedDates}). The other bookings are checked by the transaction.
+   * <p>The index is not trusted alone: a rejection is confirmed by 1 read of the dates, without lock. When the dates
+   * are free in the database, the index of the range is refreshed and the booking goes through the transaction, so a
+   * wrong bit of the index can never reject the bookings of a date for good.</p>
+   * <p>Only on a single replica: with the change log, a date released by another replica stays reserved in the index
+   * until the next poll.</p>
+   */
+  private void rejectCertainConflicts(long campsiteId, List<LocalDate> dates) {
+    if (!rsvpConfig.isConflictPrecheckEnabled() || rsvpConfig.isChangeLogEnabled()
+        || !rsvpConfig.isAvailabilityIndexEnabled() || !availabilityIndex.isLoaded()
+        || inventoryService.isInventory(campsiteId)
+        || availabilityIndex.findCertainlyReservedDates(campsiteId, dates).isEmpty()) {
+      return;
+    }
+    final var reservedDates = findConflictingDates(campsiteId, dates);
+    if (!reservedDates.isEmpty()) {
+      throw new BookingConflictException("Dates " + reservedDates + " are not available");
+    }
+    final var sortedDates = new TreeSet<>(dates);
+    readOnlyTransaction.executeWithoutResult(status -> {
+      final var flipped = availabilityIndex.refresh(campsiteId, sortedDates.first(), sortedDates.last().plusDays(1));
+      if (flipped.getAvailable().isEmpty() && flipped.getReserved().isEmpty()) {
+        // Corrected concurrently
+        return;
+      }
+      log.warn("Corrected the dates {} of the campsite {} in the availability index", flipped.getAvailable(),
+          campsiteId);
+      // The remote event is published after the commit of the current transaction, like a change of another replica
+      eventPublisher.publishEvent(BookingChangedEvent.builder()
+          .campsiteId(campsiteId)
+          .releasedDates(flipped.getAvailable())
+          .reservedDates(flipped.getReserved())
+          .remote(true)
+          .build());
+    });
+  }
+
+  /**
+   * Adds a batch of valid bookings to the campsite in 1 transaction, and returns the result of each booking in the
+   * same order.
+   * <p>A booking that overlaps a previous booking of the batch, or a date that is already reserved, is rejected with a
+   * CONFLICT result, without failing the other bookings. The reserved dates are read with 1 query over the range of
+   * the batch, and the accepted bookings are inserted in JDBC batches.</p>
+   * <p>A date reserved by a concurrent transaction after the read violates the primary key of the booking dates: the
+   * transaction is rolled back, the bookings of the dates that are reserved now are rejected with a CONFLICT result,
+   * and the other bookings are added again.</p>
+   */
+  public List<BatchBookingResult> addAll(long campsiteId, List<BookingDto> bookingDtos) {
+    log.info("Adding a batch of {} bookings to the campsite {}", bookingDtos.size(), campsiteId);
+    bookingDtos.forEach(bookingDto -> bookingDto.setCampsiteId(campsiteId));
+    if (inventoryService.isInventory(campsiteId)) {
+      return addAllToInventory(bookingDtos);
+    }
+    final var results = new BatchBookingResult[bookingDtos.size()];
+    final var candidates = new ArrayList<Integer>();
+    final var batchDates = new TreeSet<LocalDate>();
+    for (int i = 0; i < bookingDtos.size(); i++) {
+      final var dates = toDates(bookingDtos.get(i).bookingDates());
+      final var overlappingDates = dates.stream().filter(batchDates::contains).collect(Collectors.toList());
+      if (overlappingDates.isEmpty()) {
+        batchDates.addAll(dates);
+        candidates.add(i);
+      } else {
+        results[i] = BatchBookingResult.failed(HttpStatus.CONFLICT,
+            "Dates " + overlappingDates + " are reserved by a previous booking of the batch");
+      }
+    }
+    while (!candidates.isEmpty()) {
+      try {
+        retryPolicy.execute("addAll", () -> executeWrite(campsiteId, batchDates, () -> {
+          addBatch(campsiteId, bookingDtos, candidates, batchDates, results);
+          return null;
+        }));
+        break;
+      } catch (DataIntegrityViolationException | BookingConflictException e) {
+        // Each attempt rejects at least 1 booking, or fails
+        rejectConcurrentConflicts(campsiteId, bookingDtos, candidates, batchDates, results, e);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Rejects the candidates of the batch whose dates were reserved by a concurrent transaction, after the rollback of
+   * the batch. The exception is rethrown when no date is reserved.
+   */
+  private void rejectConcurrentConflicts(long campsiteId, List<BookingDto> bookingDtos, List<Integer> candidates,
+                                         NavigableSet<LocalDate> batchDates, BatchBookingResult[] results,
+                                         RuntimeException e) {
+    final var reservedDates = new HashSet<>(findConflictingDates(campsiteId, batchDates));
+    if (reservedDates.isEmpty()) {
+      throw e;
+    }
+    log.info("Dates {} of the batch were reserved concurrently", reservedDates);
+    final var iterator = candidates.iterator();
+    while (iterator.hasNext()) {
+      final var i = iterator.next();
+      final var dates = toDates(bookingDtos.get(i).bookingDates());
+      final var conflictingDates = dates.stream().filter(reservedDates::contains).collect(Collectors.toList());
+      if (!conflictingDates.isEmpty()) {
+        results[i] = BatchBookingResult.failed(HttpStatus.CONFLICT,
+            "Dates " + conflictingDates + " are not available");
+        iterator.remove();
+        dates.forEach(batchDates::remove);
+      }
+    }
+  }
+
+  /**
+   * Adds each booking of the batch at an inventory campsite in its own transaction: the bookings of the batch can
+   * share a day while pitches remain, and a sold out day fails its booking only.
+   */
+  private List<BatchBookingResult> addAllToInventory(List<BookingDto> bookingDtos) {
+    return bookingDtos.stream()
+        .map(bookingDto -> {
+          try {
+            return BatchBookingResult.added(Booking.createFrom(add(bookingDto)));
+          } catch (BookingConflictException e) {
+            return BatchBookingResult.failed(HttpStatus.CONFLICT, e.getMessage());
+          }
+        })
+        .collect(Collectors.toList());
+  }
+
+  private void addBatch(long campsiteId, List<BookingDto> bookingDtos, List<Integer> candidates,
+                        NavigableSet<LocalDate> batchDates, BatchBookingResult[] results) {
+    // Results of a rolled back attempt
+    candidates.forEach(i -> results[i] = null);
+    // 1 query over the range of the batch, with the locks of the concurrency strategy
+    final var reservedDates = new HashSet<>(convertBookingDateStreamToList(
+        findBatchReservedDates(campsiteId, batchDates.first(), batchDates.last().plusDays(1))));
+    final var acceptedBookingDtos = new ArrayList<BookingDto>();
+    for (var i : candidates) {
+      final var bookingDto = bookingDtos.get(i);
+      final var conflictingDates = toDates(bookingDto.bookingDates()).stream()
+          .filter(reservedDates::contains)
+          .collect(Collectors.toList());
+      if (conflictingDates.isEmpty()) {
+        // The id generated by a rolled back attempt is discarded
+        bookingDto.setId(0);
+        acceptedBookingDtos.add(bookingDto);
+      } else {
+        results[i] = BatchBookingResult.failed(HttpStatus.CONFLICT,
+            "Dates " + conflictingDates + " are not available");
+      }
+    }
+    testArtificialDelay();
+    // The ids of the bookings are generated first, the booking dates are owned by the bookings
+    final var addedBookingDtos = bookingRepository.saveAll(acceptedBookingDtos);
+    // Could throw DataIntegrityViolationException (primary key constraint), handled by addAll
+    bookingDateRepository.insertAll(addedBookingDtos.stream()
+        .flatMap(addedBookingDto -> addedBookingDto.bookingDates().stream())
+        .collect(Collectors.toList()));
+    final var addedIterator = addedBookingDtos.iterator();
+    for (var i : candidates) {
+      if (results[i] == null) {
+        final var addedBookingDto = addedIterator.next();
+        results[i] = BatchBookingResult.added(Booking.createFrom(addedBookingDto));
+        eventPublisher.publishEvent(BookingChangedEvent.builder()
+            .bookingId(addedBookingDto.getId())
+            .campsiteId(campsiteId)
+            .reservedDates(toDates(addedBookingDto.bookingDates()))
+            .version(addedBookingDto.getVersion())
+            .email(addedBookingDto.getEmail())
+            .build());
+      }
+    }
+    log.info("Added {} bookings of the batch", addedBookingDtos.size());
+  }
+
+  private Stream<BookingDateDto> findBatchReservedDates(long campsiteId, LocalDate startInclusive,
+                                                       LocalDate endExclusive) {
+    if (rsvpConfig.getConcurrencyStrategy() == ConcurrencyStrategy.INSERT_FIRST) {
+      // A date reserved by a concurrent transaction after the scan violates the primary key (See addAll)
+      return bookingDateRepository.quickFindAllDatesBetween(campsiteId, startInclusive, endExclusive);
+    }
+    return findReservedDates(campsiteId, startInclusive, endExclusive);
+  }
 
-    if (!bookingDates.isEmpty()) {
-      throw new BookingConflictException("Dates " + bookingDates + " are not available");
+  /**
+   * Executes a write operation according to the {@link ConcurrencyStrategy}, or in a read committed transaction at an
+   * inventory campsite. The operations of different campsites never lock the same dates.
+   *
+   * @param reservedDates the dates of the campsite newly reserved by the operation, that can conflict with other
+   *                      bookings.
+   */
+  private <T> T executeWrite(long campsiteId, Collection<LocalDate> reservedDates, Supplier<T> write) {
+    if (inventoryService.isInventory(campsiteId)) {
+      // The conditional decrement of the inventory locks the claimed days only
+      try {
+        return readCommittedTransaction.execute(status -> write.get());
+      } catch (BookingConflictException e) {
+        // The days claimed before the sold out day are rolled back
+        final var unavailableDates = readOnlyTransaction.execute(status ->
+            inventoryService.findUnavailableDates(campsiteId, reservedDates));
+        if (unavailableDates.isEmpty()) {
+          throw e;
+        }
+        throw new BookingConflictException("Dates " + unavailableDates + " are not available");
+      }
+    }
+    switch (rsvpConfig.getConcurrencyStrategy()) {
+      case STRIPED_LOCK:
+        // The dates are unlocked after the commit
+        try (var ignored = dateLockManager.lock(campsiteId, reservedDates)) {
+          return readCommittedTransaction.execute(status -> write.get());
+        }
+      case INSERT_FIRST:
+        try {
+          return readCommittedTransaction.execute(status -> write.get());
+        } catch (DataIntegrityViolationException e) {
+          // The primary key of the booking dates was violated, the transaction is rolled back
+          throw new BookingConflictException("Dates " + findConflictingDates(campsiteId, reservedDates)
+              + " are not available");
+        }
+      default:
+        return serializableTransaction.execute(status -> write.get());
     }
-    // Save booking dates if they are available
-    return saveBooking(bookingDto);
   }
 
-  private BookingDto saveBooking(BookingDto bookingDto) {
-    log.info("Saving {}", bookingDto);
+  List<LocalDate> findConflictingDates(long campsiteId, Collection<LocalDate> dates) {
+    if (dates.isEmpty()) {
+      return List.of();
+    }
+    final var sortedDates = new TreeSet<>(dates);
+    return readOnlyTransaction.execute(status ->
+        bookingDateRepository.quickFindAllSortedDatesBetween(campsiteId, sortedDates.first(),
+                sortedDates.last().plusDays(1))
+            .map(BookingDateDto::getDate)
+            .filter(sortedDates::contains)
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Inserts the dates owned by the booking (or claims them in the inventory of the campsite), or throws a
+   * BookingConflictException if a date is already reserved.
+   *
+   * @return the dates that are no longer available.
+   */
+  private List<LocalDate> reserveDates(long campsiteId, long bookingId, List<LocalDate> dates) {
+    if (inventoryService.isInventory(campsiteId)) {
+      return inventoryService.claim(campsiteId, dates);
+    }
+    if (dates.isEmpty()) {
+      return dates;
+    }
+    if (rsvpConfig.getConcurrencyStrategy() != ConcurrencyStrategy.INSERT_FIRST) {
+      // Get dates that can be reserved by other bookings between the first and the last date
+      final var reservedDates = convertBookingDateStreamToList(
+          findReservedDates(campsiteId, dates.get(0), dates.get(dates.size() - 1).plusDays(1)));
+      reservedDates.retainAll(dates);
+      if (!reservedDates.isEmpty()) {
+        throw new BookingConflictException("Dates " + reservedDates + " are not available");
+      }
+    }
+    log.info("Reserving {}", dates);
     testArtificialDelay();
     // Could throw DataIntegrityViolationException (primary key constraint)
-    bookingDateRepository.saveAll(bookingDto.bookingDates());
-    // Could fail because of version update ObjectOptimisticLockingFailureException
-    final var addedBookingDto = bookingRepository.save(bookingDto);
-    log.info("Added {}", addedBookingDto);
-    return addedBookingDto;
+    bookingDateRepository.insertAll(toBookingDates(campsiteId, bookingId, dates));
+    return dates;
   }
 
-  @Transactional(isolation = Isolation.SERIALIZABLE)
+  /**
+   * Deletes the dates owned by the booking (or releases them in the inventory of the campsite).
+   *
+   * @return the dates that became available.
+   */
+  private List<LocalDate> releaseDates(long campsiteId, long bookingId, List<LocalDate> dates) {
+    if (inventoryService.isInventory(campsiteId)) {
+      return inventoryService.release(campsiteId, dates);
+    }
+    if (!dates.isEmpty()) {
+      availabilityIndex.markReleasing(campsiteId, dates);
+      bookingDateRepository.deleteAllByBookingIdAndDateIn(bookingId, dates);
+    }
+    return dates;
+  }
+
+  private Stream<BookingDateDto> findReservedDates(long campsiteId, LocalDate startInclusive,
+                                                  LocalDate endExclusive) {
+    if (rsvpConfig.getConcurrencyStrategy() == ConcurrencyStrategy.STRIPED_LOCK) {
+      // The dates are already locked by the DateLockManager
+      return bookingDateRepository.quickFindAllDatesBetween(campsiteId, startInclusive, endExclusive);
+    }
+    // Could throw CannotAcquireLockException
+    return bookingDateRepository.findAllDatesBetween(campsiteId, startInclusive, endExclusive);
+  }
+
+  /**
+   * Updates the booking. Only the dates that are dropped by the new booking are deleted, and only the dates that are
+   * added are locked, checked and inserted. The booking stays at its campsite.
+   */
   public BookingDto update(BookingDto oldBookingDto, BookingDto newBookingDto) {
     log.info("Updating {} with {}", oldBookingDto, newBookingDto);
     newBookingDto.setId(oldBookingDto.getId());
     newBookingDto.setVersion(oldBookingDto.getVersion());
-    // Delete the booking dates of the booking that will be modified so that the dates become available
-    bookingDateRepository.deleteAll(oldBookingDto.bookingDates());
-    return addBooking(newBookingDto);
+    newBookingDto.setCampsiteId(oldBookingDto.getCampsiteId());
+    final var oldDates = toDates(oldBookingDto.bookingDates());
+    final var newDates = toDates(newBookingDto.bookingDates());
+    final var droppedDates = new ArrayList<>(oldDates);
+    droppedDates.removeAll(newDates);
+    final var addedDates = new ArrayList<>(newDates);
+    addedDates.removeAll(oldDates);
+    try {
+      return update(oldBookingDto, newBookingDto, droppedDates, addedDates);
+    } catch (OptimisticLockingFailureException e) {
+      // The old booking was stale, e.g. cached before a change of another replica
+      bookingCache.evict(oldBookingDto.getId());
+      throw e;
+    }
   }
 
-  @Transactional(readOnly = true)
-  public Optional<BookingDto> findById(long id) {
-    log.info("Find booking with id {}", id);
-    return bookingRepository.findById(id);
+  private BookingDto update(BookingDto oldBookingDto, BookingDto newBookingDto, List<LocalDate> droppedDates,
+                            List<LocalDate> addedDates) {
+    return retryPolicy.execute("update", () -> executeWrite(newBookingDto.getCampsiteId(), addedDates, () -> {
+      // The version is checked first: a concurrent update of the same booking waits for the row lock, then fails
+      // with an ObjectOptimisticLockingFailureException instead of a conflict on the dates
+      final var updatedBookingDto = bookingRepository.saveAndFlush(newBookingDto);
+      final var availableDates = releaseDates(updatedBookingDto.getCampsiteId(), updatedBookingDto.getId(),
+          droppedDates);
+      final var unavailableDates = reserveDates(updatedBookingDto.getCampsiteId(), updatedBookingDto.getId(),
+          addedDates);
+      log.info("Updated {}", updatedBookingDto);
+      eventPublisher.publishEvent(BookingChangedEvent.builder()
+          .bookingId(updatedBookingDto.getId())
+          .campsiteId(updatedBookingDto.getCampsiteId())
+          .releasedDates(availableDates)
+          .reservedDates(unavailableDates)
+          .version(updatedBookingDto.getVersion())
+          .email(oldBookingDto.getEmail())
+          .email(updatedBookingDto.getEmail())
+          .build());
+      return updatedBookingDto;
+    }));
+  }
+
+  /**
+   * Returns the booking with the id, if it is a booking of the campsite. The booking is read from the
+   * {@link BookingCache} when it is cached.
+   */
+  public Optional<BookingDto> findById(long campsiteId, long id) {
+    log.info("Find booking with id {} at the campsite {}", id, campsiteId);
+    return bookingCache.findById(id)
+        .filter(bookingDto -> bookingDto.getCampsiteId() == campsiteId);
   }
 
+  /**
+   * Cancels the booking with 1 delete of the dates that it owns (or 1 increment of the inventory of its dates) and 1
+   * delete of the booking, without loading the entities.
+   *
+   * @throws EmptyResultDataAccessException if the booking does not exist at the campsite.
+   */
   @Transactional
-  public void deleteById(long id) {
-    log.info("Deleting booking with id {}", id);
-    findById(id).ifPresent(booking ->
-        bookingDateRepository.deleteAll(booking.bookingDates()));
-    bookingRepository.deleteById(id);
+  public void deleteById(long campsiteId, long id) {
+    log.info("Deleting booking with id {} at the campsite {}", id, campsiteId);
+    // Locks the booking row: a concurrent update either committed its dates before, or fails on the version after
+    final var stay = bookingRepository.findStayByCampsiteIdAndId(campsiteId, id)
+        .orElseThrow(() -> new EmptyResultDataAccessException("No booking with id " + id, 1));
+    final var dates = Utils.getDatesBetween(stay.getArrivalDate(), stay.getDepartureDate());
+    final List<LocalDate> availableDates;
+    if (inventoryService.isInventory(campsiteId)) {
+      availableDates = inventoryService.release(campsiteId, dates);
+    } else {
+      availabilityIndex.markReleasing(campsiteId, dates);
+      bookingDateRepository.deleteAllByBookingId(id);
+      availableDates = dates;
+    }
+    bookingRepository.deleteBookingById(id);
+    log.info("Deleted booking with id {} and its {} dates", id, dates.size());
+    eventPublisher.publishEvent(BookingChangedEvent.builder()
+        .bookingId(id)
+        .campsiteId(campsiteId)
+        .releasedDates(availableDates)
+        .version(BookingChangedEvent.DELETED)
+        .email(stay.getEmail())
+        .build());
   }
 
+  /**
+   * Returns the booking dates whose booking does not exist. These dates can never be released.
+   */
   @Transactional(readOnly = true)
-  public List<BookingDto> findAll() {
-    log.info("Find all booking");
-    return bookingRepository.findAll(Sort.by("arrivalDate"));
+  public List<BookingDateDto> findOrphanDates() {
+    return bookingDateRepository.findOrphans();
   }
 
+  /**
+   * Returns a page of the bookings of the campsite that match the filter, in the order (arrivalDate, id).
+   *
+   * @param after the position of the last booking of the previous page, null for the first page.
+   */
   @Transactional(readOnly = true)
-  public List<LocalDate> getAvailabilities(LocalDate startInclusive, LocalDate endExclusive) {
-    log.info("Get availabilities between {} and {}", startInclusive, endExclusive);
+  public Slice<Booking> findAll(long campsiteId, BookingFilter filter, BookingCursor after, int size) {
+    log.info("Find {} bookings of the campsite {} matching {} after {}", size, campsiteId, filter, after);
+    var arrivalFrom = Optional.ofNullable(filter.getArrivalFrom()).orElse(MIN_DATE);
+    long afterId = 0;
+    if (after != null && !after.getArrivalDate().isBefore(arrivalFrom)) {
+      arrivalFrom = after.getArrivalDate();
+      afterId = after.getId();
+    }
+    return bookingRepository.findPage(campsiteId, arrivalFrom,
+        Optional.ofNullable(filter.getArrivalTo()).orElse(MAX_DATE),
+        Optional.ofNullable(filter.getDepartureFrom()).orElse(MIN_DATE),
+        Optional.ofNullable(filter.getDepartureTo()).orElse(MAX_DATE),
+        afterId, PageRequest.of(0, size));
+  }
+
+  /**
+   * Passes every booking of the campsite to the consumer in the order (arrivalDate, id), as it is read from a
+   * server-side cursor of {@code campsite.export-fetch-size} rows: the memory does not grow with the number of
+   * bookings.
+   */
+  public void exportAll(long campsiteId, Consumer<Booking> consumer) {
+    log.info("Export the bookings of the campsite {}", campsiteId);
+    readOnlyTransaction.executeWithoutResult(status -> {
+      try (var bookings = bookingRepository.streamAllByCampsiteId(campsiteId, rsvpConfig.getExportFetchSize())) {
+        bookings.forEach(consumer);
+      }
+    });
+  }
+
+  /**
+   * Returns the available dates of the campsite between startInclusive and endExclusive.
+   * <p>The availabilities are computed from the {@link AvailabilityIndex}, unless the property
+   * {@code campsite.availability-index-enabled} is false, in which case the database is queried. The availabilities of
+   * an inventory campsite are the days with a remaining pitch, read from the {@link InventoryService}.</p>
+   */
+  public List<LocalDate> getAvailabilities(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    log.info("Get availabilities of the campsite {} between {} and {}", campsiteId, startInclusive, endExclusive);
+    if (inventoryService.isInventory(campsiteId)) {
+      return readOnlyTransaction.execute(status ->
+          inventoryService.getAvailabilities(campsiteId, startInclusive, endExclusive));
+    }
+    if (rsvpConfig.isAvailabilityIndexEnabled() && availabilityIndex.isLoaded()) {
+      return availabilityIndex.getAvailabilities(campsiteId, startInclusive, endExclusive);
+    }
+    return readOnlyTransaction.execute(status ->
+        getAvailabilitiesFromDatabase(campsiteId, startInclusive, endExclusive));
+  }
+
+  /**
+   * Returns the free intervals [start, endExclusive) of the campsite between startInclusive and endExclusive.
+   */
+  public List<AvailabilityInterval> getAvailabilityIntervals(long campsiteId, LocalDate startInclusive,
+                                                             LocalDate endExclusive) {
+    log.info("Get availability intervals of the campsite {} between {} and {}", campsiteId, startInclusive,
+        endExclusive);
+    if (inventoryService.isInventory(campsiteId)) {
+      final var unavailableDates = Utils.getDatesBetween(startInclusive, endExclusive);
+      unavailableDates.removeAll(new HashSet<>(getAvailabilities(campsiteId, startInclusive, endExclusive)));
+      return Utils.getFreeIntervals(startInclusive, endExclusive, unavailableDates.stream());
+    }
+    if (rsvpConfig.isAvailabilityIndexEnabled() && availabilityIndex.isLoaded()) {
+      return availabilityIndex.getFreeIntervals(campsiteId, startInclusive, endExclusive);
+    }
+    return readOnlyTransaction.execute(status -> Utils.getFreeIntervals(startInclusive, endExclusive,
+        bookingDateRepository.quickFindAllSortedDatesBetween(campsiteId, startInclusive, endExclusive)
+            .map(BookingDateDto::getDate)));
+  }
+
+  private List<LocalDate> getAvailabilitiesFromDatabase(long campsiteId, LocalDate startInclusive,
+                                                        LocalDate endExclusive) {
     final var availableDates = Utils.getDatesBetween(startInclusive, endExclusive);
     final var reservedDates = convertBookingDateStreamToList(
-        bookingDateRepository.quickFindAllDatesBetween(startInclusive, endExclusive));
+        bookingDateRepository.quickFindAllDatesBetween(campsiteId, startInclusive, endExclusive));
     availableDates.removeAll(reservedDates);
     return availableDates;
   }
@@ -113,4 +618,14 @@ public class BookingService {
         .map(BookingDateDto::getDate)
         .collect(Collectors.toList());
   }
+
+  private List<LocalDate> toDates(List<BookingDateDto> bookingDates) {
+    return convertBookingDateStreamToList(bookingDates.stream());
+  }
+
+  private static List<BookingDateDto> toBookingDates(long campsiteId, long bookingId, List<LocalDate> dates) {
+    return dates.stream()
+        .map(date -> BookingDateDto.builder().campsiteId(campsiteId).date(date).bookingId(bookingId).build())
+        .collect(Collectors.toList());
+  }
 }
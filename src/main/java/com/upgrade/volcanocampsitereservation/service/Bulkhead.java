@@ -0,0 +1,107 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrent requests of a kind (reads, writes...).
+ * <p>Up to maxConcurrent requests are executed, up to queueSize requests wait in FIFO order for at most queueTimeout,
+ * and the other requests are rejected immediately: an overloaded service sheds the load quickly instead of
+ * exhausting its threads and database connections.</p>
+ * <p>The gauges {@code campsite.admission.in-flight} and {@code campsite.admission.queue} and the counter
+ * {@code campsite.admission.shed} (tagged by reason) are tagged by bulkhead name.</p>
+ */
+@Slf4j
+public class Bulkhead {
+
+  private static final String IN_FLIGHT_METRIC = "campsite.admission.in-flight";
+
+  private static final String QUEUE_METRIC = "campsite.admission.queue";
+
+  private static final String SHED_METRIC = "campsite.admission.shed";
+
+  private final String name;
+
+  private final int maxConcurrent;
+
+  private final int queueSize;
+
+  private final long queueTimeoutNanos;
+
+  private final Semaphore permits;
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final Counter queueFullCounter;
+
+  private final Counter queueTimeoutCounter;
+
+  public Bulkhead(String name, int maxConcurrent, int queueSize, Duration queueTimeout, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.queueSize = queueSize;
+    this.queueTimeoutNanos = queueTimeout.toNanos();
+    // Fair: the queued requests are admitted in FIFO order
+    this.permits = new Semaphore(maxConcurrent, true);
+    Gauge.builder(IN_FLIGHT_METRIC, this, Bulkhead::getInFlight)
+        .tag("bulkhead", name)
+        .register(meterRegistry);
+    Gauge.builder(QUEUE_METRIC, queued, AtomicInteger::get)
+        .tag("bulkhead", name)
+        .register(meterRegistry);
+    this.queueFullCounter = meterRegistry.counter(SHED_METRIC, "bulkhead", name, "reason", "queue-full");
+    this.queueTimeoutCounter = meterRegistry.counter(SHED_METRIC, "bulkhead", name, "reason", "queue-timeout");
+  }
+
+  /**
+   * Admits the request, after waiting in the queue if all the permits are taken. Every successful call must be
+   * followed by a call to {@link #release()}.
+   *
+   * @throws ServiceUnavailableException if the queue is full, or the request waited longer than the queue timeout.
+   */
+  public void acquire() {
+    try {
+      // Unlike tryAcquire(), the timed tryAcquire honours the fairness: a new request never barges past the queue
+      if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+        return;
+      }
+      if (queued.incrementAndGet() > queueSize) {
+        queued.decrementAndGet();
+        queueFullCounter.increment();
+        throw new ServiceUnavailableException("Too many " + name + " requests, please retry later");
+      }
+      try {
+        if (!permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+          queueTimeoutCounter.increment();
+          log.info("A {} request waited more than {} ms", name, TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos));
+          throw new ServiceUnavailableException("Too many " + name + " requests, please retry later");
+        }
+      } finally {
+        queued.decrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for a " + name + " slot");
+    }
+  }
+
+  public void release() {
+    permits.release();
+  }
+
+  public int getInFlight() {
+    return maxConcurrent - permits.availablePermits();
+  }
+
+  public int getQueued() {
+    return queued.get();
+  }
+}
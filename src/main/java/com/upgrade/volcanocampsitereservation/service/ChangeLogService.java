@@ -0,0 +1,208 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityChange;
+import com.upgrade.volcanocampsitereservation.dto.BookingChangeDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.repository.BookingChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the in-memory state of the replicas coherent through a change log table.
+ * <p>Every {@link BookingChangedEvent} is written to the {@link BookingChangeDto} table in the same transaction as the
+ * booking change, including the changes without dates (e.g. an update of the email, a confirmed hold). Each replica
+ * tails the table by sequence number, refreshes the changed dates of its {@link AvailabilityIndex} from the database,
+ * and publishes a remote {@link BookingChangedEvent} so that the other listeners (availability stream, reservation
+ * state version, caches...) are notified of the changes of the other replicas.</p>
+ * <p>The change log entry is written at the end of the transaction, after the booking dates: 2 transactions that
+ * reserve or release the same date are committed in the order of their sequence numbers. A missing sequence number is
+ * either a transaction that is not committed yet, or a rolled back transaction: the tailing waits for it up to
+ * {@code campsite.change-log-gap-timeout}, then goes on and reads the skipped sequence numbers again at every poll,
+ * until they appear or {@code campsite.change-log-retention} elapses.</p>
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "campsite", name = "change-log-enabled", havingValue = "true")
+public class ChangeLogService {
+
+  private final BookingChangeRepository bookingChangeRepository;
+
+  private final AvailabilityIndex availabilityIndex;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final TransactionTemplate transaction;
+
+  private final String origin = UUID.randomUUID().toString();
+
+  private volatile boolean started;
+
+  // Only accessed by the scheduler thread once started
+  private long lastSequence;
+
+  private Instant gapDetectedAt;
+
+  // The skipped sequence numbers, with the time they were skipped
+  private final NavigableMap<Long, Instant> skippedSequences = new TreeMap<>();
+
+  public ChangeLogService(BookingChangeRepository bookingChangeRepository,
+                          AvailabilityIndex availabilityIndex,
+                          ApplicationEventPublisher eventPublisher,
+                          ApplicationConfiguration rsvpConfig,
+                          PlatformTransactionManager transactionManager) {
+    this.bookingChangeRepository = bookingChangeRepository;
+    this.availabilityIndex = availabilityIndex;
+    this.eventPublisher = eventPublisher;
+    this.rsvpConfig = rsvpConfig;
+    this.transaction = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Starts tailing after the last change. Executed before the loading of the {@link AvailabilityIndex}, so that no
+   * change is missed.
+   */
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    lastSequence = bookingChangeRepository.findMaxSequence().orElse(0L);
+    started = true;
+    log.info("Tailing the change log after the sequence {} (origin {})", lastSequence, origin);
+  }
+
+  @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+  public void onBookingChanged(BookingChangedEvent event) {
+    if (event.isRemote()) {
+      return;
+    }
+    final var dates = Stream.concat(event.getReleasedDates().stream(), event.getReservedDates().stream())
+        .sorted()
+        .toArray(LocalDate[]::new);
+    // A change without dates has no range, but the other replicas still bump their versions and evict their caches
+    bookingChangeRepository.save(BookingChangeDto.builder()
+        .origin(origin)
+        .bookingId(event.getBookingId())
+        .campsiteId(event.getCampsiteId())
+        .startDate(dates.length == 0 ? null : dates[0])
+        .endDate(dates.length == 0 ? null : dates[dates.length - 1].plusDays(1))
+        .createdAt(Instant.now())
+        .build());
+  }
+
+  @Scheduled(fixedDelayString = "${campsite.change-log-poll-interval:PT0.5S}")
+  public void poll() {
+    if (!started) {
+      return;
+    }
+    transaction.executeWithoutResult(status -> {
+      applySkippedChanges();
+      final var changes = bookingChangeRepository.findBySequenceGreaterThanOrderBySequence(
+          lastSequence, PageRequest.ofSize(rsvpConfig.getChangeLogBatchSize()));
+      for (var change : changes) {
+        if (!isNext(change)) {
+          break;
+        }
+        apply(change);
+        lastSequence = change.getSequence();
+      }
+    });
+  }
+
+  @Scheduled(cron = "${campsite.change-log-purge-cron:0 0 * * * *}")
+  public void purge() {
+    final var createdBefore = Instant.now().minus(rsvpConfig.getChangeLogRetention());
+    final Integer count = transaction.execute(status -> bookingChangeRepository.deleteAllCreatedBefore(createdBefore));
+    log.info("Purged {} changes created before {}", count, createdBefore);
+  }
+
+  /**
+   * Applies the skipped changes that were committed since they were skipped, e.g. by a slow transaction. A skipped
+   * sequence number that is older than the retention is forgotten: it was rolled back.
+   */
+  private void applySkippedChanges() {
+    if (skippedSequences.isEmpty()) {
+      return;
+    }
+    final var expiredBefore = Instant.now().minus(rsvpConfig.getChangeLogRetention());
+    skippedSequences.values().removeIf(skippedAt -> skippedAt.isBefore(expiredBefore));
+    final var sequences = skippedSequences.keySet().stream()
+        .limit(rsvpConfig.getChangeLogBatchSize())
+        .collect(Collectors.toList());
+    if (sequences.isEmpty()) {
+      return;
+    }
+    for (var change : bookingChangeRepository.findBySequenceInOrderBySequence(sequences)) {
+      log.info("Applying the change {} committed after the gap timeout", change.getSequence());
+      // The dates are refreshed from the database: a late change cannot overwrite a later one
+      apply(change);
+      skippedSequences.remove(change.getSequence());
+    }
+  }
+
+  private boolean isNext(BookingChangeDto change) {
+    if (change.getSequence() == lastSequence + 1) {
+      gapDetectedAt = null;
+      return true;
+    }
+    final var now = Instant.now();
+    if (gapDetectedAt == null) {
+      gapDetectedAt = now;
+    }
+    if (Duration.between(gapDetectedAt, now).compareTo(rsvpConfig.getChangeLogGapTimeout()) < 0) {
+      return false;
+    }
+    log.warn("Skipping the missing changes {} to {}", lastSequence + 1, change.getSequence() - 1);
+    for (var sequence = lastSequence + 1; sequence < change.getSequence(); sequence++) {
+      skippedSequences.put(sequence, now);
+    }
+    gapDetectedAt = null;
+    return true;
+  }
+
+  private void apply(BookingChangeDto change) {
+    // A change without dates (e.g. an update of the email) has no range to refresh
+    final var flipped = change.getStartDate() == null
+        ? AvailabilityChange.builder().available(List.of()).reserved(List.of()).build()
+        : availabilityIndex.refresh(change.getCampsiteId(), change.getStartDate(), change.getEndDate());
+    final var local = origin.equals(change.getOrigin());
+    if (local && flipped.getAvailable().isEmpty() && flipped.getReserved().isEmpty()) {
+      // Already applied after the commit of the local transaction
+      return;
+    }
+    // A remote change is published even when no date flipped: the version of the campsite is incremented and the
+    // cached bookings are evicted
+    log.info("Applying the change {} of the booking {}", change.getSequence(), change.getBookingId());
+    // The remote event is published after the commit of the current transaction
+    eventPublisher.publishEvent(BookingChangedEvent.builder()
+        .bookingId(change.getBookingId())
+        .campsiteId(change.getCampsiteId())
+        .releasedDates(flipped.getAvailable())
+        .reservedDates(flipped.getReserved())
+        .remote(true)
+        .build());
+  }
+}
@@ -0,0 +1,80 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.google.common.util.concurrent.Striped;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
+/**
+ * In-process locks on the booking dates.
+ * <p>The dates are mapped to a bounded number of striped locks by campsite and epoch day. The locks are always
+ * acquired in the order of the stripes, so 2 bookings cannot deadlock, and 2 bookings without common date (and
+ * without common stripe) do not wait for each other. The same date at 2 campsites is a different key, so the 2
+ * campsites usually do not share a stripe (2 keys can collide on the same stripe, which only adds a wait).</p>
+ */
+@Component
+public class DateLockManager {
+
+  private final Striped<Lock> stripes;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  public DateLockManager(ApplicationConfiguration rsvpConfig) {
+    this.rsvpConfig = rsvpConfig;
+    this.stripes = Striped.lock(rsvpConfig.getDateLockStripes());
+  }
+
+  /**
+   * Locks the given dates of the campsite.
+   *
+   * @return the locks to release with {@link DateLocks#close()}.
+   * @throws CannotAcquireLockException if the dates cannot be locked within {@code campsite.date-lock-timeout}.
+   */
+  public DateLocks lock(long campsiteId, Collection<LocalDate> dates) {
+    final var keys = dates.stream()
+        .map(date -> List.of(campsiteId, date.toEpochDay()))
+        .collect(Collectors.toSet());
+    final Deque<Lock> acquiredLocks = new ArrayDeque<>();
+    try {
+      for (var lock : stripes.bulkGet(keys)) {
+        if (!lock.tryLock(rsvpConfig.getDateLockTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+          throw new CannotAcquireLockException("Could not lock the dates " + dates);
+        }
+        acquiredLocks.push(lock);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      unlock(acquiredLocks);
+      throw new CannotAcquireLockException("Interrupted while locking the dates " + dates);
+    } catch (RuntimeException e) {
+      unlock(acquiredLocks);
+      throw e;
+    }
+    return () -> unlock(acquiredLocks);
+  }
+
+  private static void unlock(Deque<Lock> acquiredLocks) {
+    // Released in the reverse order of acquisition
+    while (!acquiredLocks.isEmpty()) {
+      acquiredLocks.pop().unlock();
+    }
+  }
+
+  /**
+   * Locks acquired by {@link DateLockManager#lock(long, Collection)}.
+   */
+  @FunctionalInterface
+  public interface DateLocks extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
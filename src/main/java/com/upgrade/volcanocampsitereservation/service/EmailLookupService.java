@@ -0,0 +1,93 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the bookings of an email ("my bookings") with the index (email, campsiteId) of the bookings, and keeps the
+ * recent results in a bounded in-memory cache.
+ * <p>A result is invalidated after the commit of every change of a booking of the email (the event carries the emails
+ * of the booking before and after the change), and the whole cache is invalidated by the changes of the other
+ * replicas when they are read from the change log (See {@link ChangeLogService}), including the changes without
+ * dates.</p>
+ * <p>A result read before a change but cached after its invalidation is detected with a generation counter, and
+ * removed. The emails are normalized (See {@link Utils#normalizeEmail}), and the cached bookings are detached copies
+ * like the ones of the {@link BookingCache}: the callers get their own copies, and cannot modify the cache.</p>
+ */
+@Service
+@Slf4j
+public class EmailLookupService {
+
+  private final BookingRepository bookingRepository;
+
+  private final Cache<Key, List<BookingDto>> results;
+
+  // Incremented before every invalidation
+  private final AtomicLong generation = new AtomicLong();
+
+  public EmailLookupService(BookingRepository bookingRepository, ApplicationConfiguration rsvpConfig) {
+    this.bookingRepository = bookingRepository;
+    this.results = CacheBuilder.newBuilder()
+        .maximumSize(rsvpConfig.getEmailCacheSize())
+        .expireAfterWrite(rsvpConfig.getEmailCacheTtl())
+        .build();
+  }
+
+  /**
+   * Returns copies of the bookings of the email at the campsite, in the order (arrivalDate, id). The email is not
+   * case-sensitive.
+   */
+  public List<BookingDto> findAllByEmail(long campsiteId, String email) {
+    final var normalizedEmail = Utils.normalizeEmail(email);
+    final var key = new Key(campsiteId, normalizedEmail);
+    final var cached = results.getIfPresent(key);
+    if (cached != null) {
+      return copy(cached);
+    }
+    final var loadGeneration = generation.get();
+    final var bookingDtos = bookingRepository.findAllByEmail(normalizedEmail, campsiteId);
+    results.put(key, copy(bookingDtos));
+    if (generation.get() != loadGeneration) {
+      // A booking changed during the query: the result may be stale
+      results.invalidate(key);
+    }
+    return bookingDtos;
+  }
+
+  @TransactionalEventListener
+  public void onBookingChanged(BookingChangedEvent event) {
+    generation.incrementAndGet();
+    if (event.isRemote()) {
+      // The emails of a remote change are unknown
+      results.invalidateAll();
+    } else {
+      event.getEmails().forEach(email ->
+          results.invalidate(new Key(event.getCampsiteId(), Utils.normalizeEmail(email))));
+    }
+  }
+
+  private static List<BookingDto> copy(List<BookingDto> bookingDtos) {
+    return bookingDtos.stream()
+        .map(BookingCache::copy)
+        .collect(Collectors.toUnmodifiableList());
+  }
+
+  @Value
+  private static class Key {
+    long campsiteId;
+    String email;
+  }
+}
@@ -0,0 +1,288 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.Hold;
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
+import com.upgrade.volcanocampsitereservation.exception.HoldNotFoundException;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Holds dates for {@code campsite.hold-ttl}, until the hold is confirmed into a booking, released, or expires.
+ * <p>The held dates are rows of the {@link BookingDateDto} table owned by the hold: the primary key rejects the
+ * concurrent holds and bookings of the same dates (on every replica), and the held dates are unavailable like the
+ * booked dates. A hold is a short insert-only transaction, while the confirmation only transfers the rows to the
+ * booking, without any conflict.</p>
+ * <p>The expirations are scheduled in a {@link DelayQueue} consumed by 1 thread, without polling the database. The
+ * holds of the other replicas are loaded when the application is ready, and the expired holds that were missed (e.g.
+ * the replica that created them stopped) are swept every {@code campsite.hold-sweep-interval}.</p>
+ */
+@Service
+@Slf4j
+public class HoldService {
+
+  private final BookingDateRepository bookingDateRepository;
+
+  private final BookingRepository bookingRepository;
+
+  private final BookingService bookingService;
+
+  private final InventoryService inventoryService;
+
+  private final AvailabilityIndex availabilityIndex;
+
+  private final BookingRetryPolicy retryPolicy;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final TransactionTemplate transaction;
+
+  private final DelayQueue<Expiry> expiries = new DelayQueue<>();
+
+  private final Thread expiryThread;
+
+  public HoldService(BookingDateRepository bookingDateRepository,
+                     BookingRepository bookingRepository,
+                     BookingService bookingService,
+                     InventoryService inventoryService,
+                     AvailabilityIndex availabilityIndex,
+                     BookingRetryPolicy retryPolicy,
+                     ApplicationConfiguration rsvpConfig,
+                     ApplicationEventPublisher eventPublisher,
+                     PlatformTransactionManager transactionManager) {
+    this.bookingDateRepository = bookingDateRepository;
+    this.bookingRepository = bookingRepository;
+    this.bookingService = bookingService;
+    this.inventoryService = inventoryService;
+    this.availabilityIndex = availabilityIndex;
+    this.retryPolicy = retryPolicy;
+    this.rsvpConfig = rsvpConfig;
+    this.eventPublisher = eventPublisher;
+    this.transaction = new TransactionTemplate(transactionManager);
+    this.transaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    this.expiryThread = new Thread(this::expireHolds, "hold-expiry");
+    this.expiryThread.setDaemon(true);
+    this.expiryThread.start();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    expiryThread.interrupt();
+  }
+
+  /**
+   * Schedules the expiration of the existing holds.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    final var heldDates = bookingDateRepository.findAllHeld();
+    heldDates.stream()
+        .collect(Collectors.toMap(BookingDateDto::getHoldId, BookingDateDto::getHeldUntil, (a, b) -> a))
+        .forEach(this::schedule);
+    log.info("Loaded {} held dates", heldDates.size());
+  }
+
+  /**
+   * Holds the dates of the stay at the campsite.
+   *
+   * @throws BookingConflictException if a date is already held or booked at the campsite.
+   * @throws BadRequestException if the campsite is an inventory campsite, whose dates cannot be held.
+   */
+  public Hold hold(long campsiteId, LocalDate arrivalDate, LocalDate departureDate) {
+    if (inventoryService.isInventory(campsiteId)) {
+      // A held date is a booking date, which cannot be shared by several pitches
+      throw new BadRequestException("The dates of the campsite " + campsiteId + " cannot be held");
+    }
+    final var holdId = UUID.randomUUID().toString();
+    final var heldUntil = Instant.now().plus(rsvpConfig.getHoldTtl());
+    final var dates = Utils.getDatesBetween(arrivalDate, departureDate);
+    log.info("Holding the dates {} of the campsite {} until {}", dates, campsiteId, heldUntil);
+    retryPolicy.execute("hold", () -> {
+      try {
+        return transaction.execute(status -> {
+          // No check before the insert, the primary key rejects the dates that are already held or booked
+          bookingDateRepository.insertAll(dates.stream()
+              .map(date -> BookingDateDto.builder()
+                  .campsiteId(campsiteId)
+                  .date(date)
+                  .holdId(holdId)
+                  .heldUntil(heldUntil)
+                  .build())
+              .collect(Collectors.toList()));
+          eventPublisher.publishEvent(BookingChangedEvent.builder()
+              .campsiteId(campsiteId)
+              .reservedDates(dates)
+              .build());
+          return holdId;
+        });
+      } catch (DataIntegrityViolationException e) {
+        throw new BookingConflictException("Dates " + bookingService.findConflictingDates(campsiteId, dates)
+            + " are not available");
+      }
+    });
+    schedule(holdId, heldUntil);
+    return Hold.builder()
+        .id(holdId)
+        .campsiteId(campsiteId)
+        .arrivalDate(arrivalDate)
+        .departureDate(departureDate)
+        .expiresAt(heldUntil)
+        .build();
+  }
+
+  /**
+   * Adds the booking with the held dates, at the campsite of the booking.
+   *
+   * @throws HoldNotFoundException if the hold does not exist at the campsite, or expired.
+   * @throws BadRequestException if the dates of the booking are not the held dates.
+   */
+  public BookingDto confirm(String holdId, BookingDto bookingDto) {
+    log.info("Confirming the hold {} with {}", holdId, bookingDto);
+    return retryPolicy.execute("confirmHold", () -> transaction.execute(status -> {
+      final var heldDates = toDates(findUnexpiredHeldDates(bookingDto.getCampsiteId(), holdId));
+      if (!heldDates.equals(Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))) {
+        throw new BadRequestException("The dates of the booking must be the dates of the hold " + holdId);
+      }
+      // The id generated by a rolled back attempt is discarded
+      bookingDto.setId(0);
+      final var addedBookingDto = bookingRepository.save(bookingDto);
+      bookingDateRepository.confirmHold(holdId, addedBookingDto.getId());
+      // The dates were already reserved by the hold
+      eventPublisher.publishEvent(BookingChangedEvent.builder()
+          .bookingId(addedBookingDto.getId())
+          .campsiteId(addedBookingDto.getCampsiteId())
+          .version(addedBookingDto.getVersion())
+          .email(addedBookingDto.getEmail())
+          .build());
+      return addedBookingDto;
+    }));
+  }
+
+  /**
+   * Releases the held dates before the expiration.
+   *
+   * @throws HoldNotFoundException if the hold does not exist at the campsite, or expired.
+   */
+  public void release(long campsiteId, String holdId) {
+    log.info("Releasing the hold {}", holdId);
+    transaction.executeWithoutResult(status -> delete(holdId, findUnexpiredHeldDates(campsiteId, holdId)));
+  }
+
+  /**
+   * Expires the holds whose expiration was missed by the timer of this replica.
+   */
+  @Scheduled(fixedDelayString = "${campsite.hold-sweep-interval:PT1M}")
+  public void sweep() {
+    bookingDateRepository.findExpiredHoldIds(Instant.now()).forEach(this::expire);
+  }
+
+  private void expireHolds() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        expire(expiries.take().holdId);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        // Expired by the next sweep
+        log.warn("Failed to expire a hold", e);
+      }
+    }
+  }
+
+  private void expire(String holdId) {
+    transaction.executeWithoutResult(status -> {
+      final var heldDates = bookingDateRepository.findAllByHoldId(holdId);
+      if (heldDates.isEmpty()) {
+        // Confirmed, released, or already expired
+        return;
+      }
+      final var heldUntil = heldDates.get(0).getHeldUntil();
+      if (heldUntil.isAfter(Instant.now())) {
+        schedule(holdId, heldUntil);
+        return;
+      }
+      log.info("The hold {} expired", holdId);
+      delete(holdId, heldDates);
+    });
+  }
+
+  private List<BookingDateDto> findUnexpiredHeldDates(long campsiteId, String holdId) {
+    final var heldDates = bookingDateRepository.findAllByHoldId(holdId);
+    if (heldDates.isEmpty() || heldDates.get(0).getCampsiteId() != campsiteId
+        || !heldDates.get(0).getHeldUntil().isAfter(Instant.now())) {
+      throw new HoldNotFoundException(holdId);
+    }
+    return heldDates;
+  }
+
+  private void delete(String holdId, List<BookingDateDto> heldDates) {
+    final var campsiteId = heldDates.get(0).getCampsiteId();
+    final var dates = toDates(heldDates);
+    availabilityIndex.markReleasing(campsiteId, dates);
+    bookingDateRepository.deleteAllByHoldId(holdId);
+    eventPublisher.publishEvent(BookingChangedEvent.builder()
+        .campsiteId(campsiteId)
+        .releasedDates(dates)
+        .build());
+  }
+
+  private void schedule(String holdId, Instant heldUntil) {
+    expiries.add(new Expiry(holdId, heldUntil));
+  }
+
+  private static List<LocalDate> toDates(List<BookingDateDto> bookingDates) {
+    return bookingDates.stream()
+        .map(BookingDateDto::getDate)
+        .collect(Collectors.toList());
+  }
+
+  private static final class Expiry implements Delayed {
+
+    private final String holdId;
+
+    private final Instant heldUntil;
+
+    private Expiry(String holdId, Instant heldUntil) {
+      this.holdId = holdId;
+      this.heldUntil = heldUntil;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(Duration.between(Instant.now(), heldUntil));
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return heldUntil.compareTo(((Expiry) other).heldUntil);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.dto.IdempotencyKeyDto;
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import com.upgrade.volcanocampsitereservation.exception.ServiceUnavailableException;
+import com.upgrade.volcanocampsitereservation.repository.IdempotencyKeyRepository;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adds the bookings of the {@code POST /bookings} requests with an {@code Idempotency-Key} header exactly once.
+ * <p>The response of the first request is written to the {@link IdempotencyKeyDto} table in the same transaction as
+ * the booking, and kept in a bounded in-memory cache: the later requests with the same key get the stored response
+ * without calling the {@link BookingService}, on every replica and after a restart.</p>
+ * <p>The concurrent requests with the same key on a replica are coalesced: only the first one adds the booking, and
+ * the other ones wait for its response. On different replicas, the second transaction violates the primary key of
+ * the {@link IdempotencyKeyDto} table and gets the response of the first one.</p>
+ * <p>Only the added bookings are stored: a failed request did not write anything and can be retried with the same
+ * key.</p>
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+  private final BookingService bookingService;
+
+  private final IdempotencyKeyRepository idempotencyKeyRepository;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final ObjectMapper objectMapper;
+
+  private final TransactionTemplate transaction;
+
+  private final Cache<String, IdempotencyKeyDto> responses;
+
+  private final ConcurrentMap<String, CompletableFuture<IdempotencyKeyDto>> inFlightRequests =
+      new ConcurrentHashMap<>();
+
+  public IdempotencyService(BookingService bookingService,
+                            IdempotencyKeyRepository idempotencyKeyRepository,
+                            ApplicationConfiguration rsvpConfig,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager) {
+    this.bookingService = bookingService;
+    this.idempotencyKeyRepository = idempotencyKeyRepository;
+    this.rsvpConfig = rsvpConfig;
+    this.objectMapper = objectMapper;
+    this.transaction = new TransactionTemplate(transactionManager);
+    this.responses = CacheBuilder.newBuilder()
+        .maximumSize(rsvpConfig.getIdempotencyCacheSize())
+        .expireAfterWrite(rsvpConfig.getIdempotencyKeyRetention())
+        .build();
+  }
+
+  /**
+   * Adds the booking, or returns the response of the previous request with the same key.
+   *
+   * @throws BadRequestException if the key was used for another booking.
+   */
+  public IdempotentResponse add(String idempotencyKey, Booking booking) {
+    final var requestHash = hash(booking);
+    final var cachedResponse = responses.getIfPresent(idempotencyKey);
+    if (cachedResponse != null) {
+      return replay(cachedResponse, requestHash);
+    }
+    final var future = new CompletableFuture<IdempotencyKeyDto>();
+    final var inFlightFuture = inFlightRequests.putIfAbsent(idempotencyKey, future);
+    if (inFlightFuture != null) {
+      log.info("Waiting for the concurrent request with the idempotency key {}", idempotencyKey);
+      return replay(await(inFlightFuture), requestHash);
+    }
+    try {
+      final var storedResponse = idempotencyKeyRepository.findById(idempotencyKey);
+      if (storedResponse.isPresent()) {
+        complete(future, storedResponse.get());
+        return replay(storedResponse.get(), requestHash);
+      }
+      final var response = addOnce(idempotencyKey, requestHash, booking);
+      complete(future, response.getStoredResponse());
+      return response;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightRequests.remove(idempotencyKey, future);
+    }
+  }
+
+  @Scheduled(cron = "${campsite.idempotency-key-purge-cron:0 0 * * * *}")
+  public void purge() {
+    final var createdBefore = Instant.now().minus(rsvpConfig.getIdempotencyKeyRetention());
+    final Integer count = transaction.execute(status ->
+        idempotencyKeyRepository.deleteAllCreatedBefore(createdBefore));
+    log.info("Purged {} idempotency keys created before {}", count, createdBefore);
+  }
+
+  @VisibleForTesting
+  void invalidateCache() {
+    responses.invalidateAll();
+  }
+
+  private IdempotentResponse addOnce(String idempotencyKey, String requestHash, Booking booking) {
+    final var storedResponse = new IdempotencyKeyDto[1];
+    try {
+      bookingService.add(BookingDto.createFrom(booking), addedBookingDto -> {
+        storedResponse[0] = IdempotencyKeyDto.builder()
+            .idempotencyKey(idempotencyKey)
+            .requestHash(requestHash)
+            .bookingId(addedBookingDto.getId())
+            .response(write(Booking.createFrom(addedBookingDto)))
+            .createdAt(Instant.now())
+            .build();
+        idempotencyKeyRepository.save(storedResponse[0]);
+      });
+    } catch (RuntimeException e) {
+      // The same key may have been committed by another replica in the meantime
+      final var concurrentResponse = idempotencyKeyRepository.findById(idempotencyKey);
+      if (concurrentResponse.isPresent()) {
+        log.info("The idempotency key {} was used by a concurrent request", idempotencyKey);
+        return replay(concurrentResponse.get(), requestHash);
+      }
+      throw e;
+    }
+    return new IdempotentResponse(read(storedResponse[0]), false, storedResponse[0]);
+  }
+
+  private void complete(CompletableFuture<IdempotencyKeyDto> future, IdempotencyKeyDto response) {
+    responses.put(response.getIdempotencyKey(), response);
+    future.complete(response);
+  }
+
+  private IdempotencyKeyDto await(CompletableFuture<IdempotencyKeyDto> future) {
+    try {
+      return future.get(rsvpConfig.getIdempotencyWaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for the concurrent request");
+    } catch (TimeoutException e) {
+      throw new ServiceUnavailableException("The concurrent request with the same idempotency key is still running");
+    } catch (ExecutionException e) {
+      // The concurrent request failed without adding the booking, this one fails the same way
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private IdempotentResponse replay(IdempotencyKeyDto storedResponse, String requestHash) {
+    if (!storedResponse.getRequestHash().equals(requestHash)) {
+      throw new BadRequestException(MessageFormat.format(
+          "The idempotency key {0} was used for another booking", storedResponse.getIdempotencyKey()));
+    }
+    return new IdempotentResponse(read(storedResponse), true, storedResponse);
+  }
+
+  private String hash(Booking booking) {
+    return Hashing.sha256().hashString(write(booking), StandardCharsets.UTF_8).toString();
+  }
+
+  private String write(Booking booking) {
+    try {
+      return objectMapper.writeValueAsString(booking);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Cannot serialize " + booking, e);
+    }
+  }
+
+  private Booking read(IdempotencyKeyDto storedResponse) {
+    try {
+      return objectMapper.readValue(storedResponse.getResponse(), Booking.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Cannot deserialize the response of " + storedResponse.getIdempotencyKey(), e);
+    }
+  }
+
+  /**
+   * The response of a request with an idempotency key.
+   */
+  @Value
+  public static class IdempotentResponse {
+    Booking booking;
+    // True when the booking was added by a previous request with the same key
+    boolean replayed;
+    IdempotencyKeyDto storedResponse;
+  }
+}
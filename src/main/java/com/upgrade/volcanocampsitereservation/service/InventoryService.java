@@ -0,0 +1,159 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.dto.DailyInventoryDto;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
+import com.upgrade.volcanocampsitereservation.repository.DailyInventoryRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Inventory of the campsites with several pitches per day (See {@code campsite.capacities}): each day of such a
+ * campsite is a {@link DailyInventoryDto} with a counter of remaining pitches.
+ * <p>A booking claims its days with 1 conditional decrement ({@code remaining > 0}) in the transaction of the
+ * booking, and a cancellation increments them. The concurrent bookings of the same day only wait for the row locks of
+ * the update, and the availabilities are 1 scan of the counters.</p>
+ * <p>The days are provisioned with the full capacity from today to the last day that can be booked, when the
+ * application starts and every {@code campsite.inventory-provision-interval}. A day that is not provisioned is not
+ * available.</p>
+ */
+@Service
+@Slf4j
+public class InventoryService {
+
+  private final DailyInventoryRepository dailyInventoryRepository;
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final TransactionTemplate transaction;
+
+  public InventoryService(DailyInventoryRepository dailyInventoryRepository,
+                          ApplicationConfiguration rsvpConfig,
+                          PlatformTransactionManager transactionManager) {
+    this.dailyInventoryRepository = dailyInventoryRepository;
+    this.rsvpConfig = rsvpConfig;
+    this.transaction = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Returns true if the reservations of the campsite are counted by the inventory, instead of 1 booking date per
+   * reserved date.
+   */
+  public boolean isInventory(long campsiteId) {
+    return rsvpConfig.getCapacities().containsKey(campsiteId);
+  }
+
+  /**
+   * Returns the ids of the inventory campsites.
+   */
+  public Set<Long> getCampsiteIds() {
+    return rsvpConfig.getCapacities().keySet();
+  }
+
+  /**
+   * Inserts the missing days of the inventory campsites, up to the last day that can be booked. The existing days are
+   * not modified.
+   */
+  @Scheduled(fixedDelayString = "${campsite.inventory-provision-interval:PT1H}")
+  public void provision() {
+    final var start = LocalDate.now();
+    final var end = start.plusDays(rsvpConfig.getReservationMaxDaysInAdvance() + rsvpConfig.getMaxReservedDays() + 1);
+    rsvpConfig.getCapacities().forEach((campsiteId, capacity) -> {
+      try {
+        final int provisioned = transaction.execute(status -> {
+          final var days = new HashSet<>(Utils.getDatesBetween(start, end));
+          days.removeAll(dailyInventoryRepository.findProvisionedDatesBetween(campsiteId, start, end));
+          dailyInventoryRepository.insertAll(days.stream()
+              .map(date -> DailyInventoryDto.builder().campsiteId(campsiteId).date(date).remaining(capacity).build())
+              .collect(Collectors.toList()));
+          return days.size();
+        });
+        log.info("Provisioned {} days of the campsite {} with {} pitches", provisioned, campsiteId, capacity);
+      } catch (DataIntegrityViolationException e) {
+        // Provisioned concurrently by another replica
+        log.info("The days of the campsite {} are already provisioned", campsiteId);
+      }
+    });
+  }
+
+  /**
+   * Claims 1 pitch on each date, in the transaction of the booking, and returns the dates that are sold out after
+   * the claim.
+   *
+   * @throws BookingConflictException if a date is sold out: the transaction must be rolled back, the other dates may
+   *                                  have been claimed.
+   */
+  public List<LocalDate> claim(long campsiteId, Collection<LocalDate> dates) {
+    if (dates.isEmpty()) {
+      return List.of();
+    }
+    final var claimed = dailyInventoryRepository.claim(campsiteId, dates);
+    if (claimed < dates.size()) {
+      throw new BookingConflictException("Dates " + dates + " are not available");
+    }
+    // The claimed rows are locked until the commit
+    return dailyInventoryRepository.findDatesWithRemaining(campsiteId, dates, 0);
+  }
+
+  /**
+   * Releases 1 pitch on each date, in the transaction of the cancellation, and returns the dates that were sold out
+   * before the release.
+   */
+  public List<LocalDate> release(long campsiteId, Collection<LocalDate> dates) {
+    if (dates.isEmpty()) {
+      return List.of();
+    }
+    dailyInventoryRepository.release(campsiteId, dates);
+    // The released rows are locked until the commit: 1 remaining pitch means that the date was sold out
+    return dailyInventoryRepository.findDatesWithRemaining(campsiteId, dates, 1);
+  }
+
+  /**
+   * Returns the dates that are sold out (or not provisioned) at the campsite. Used after the rollback of a failed
+   * claim.
+   */
+  public List<LocalDate> findUnavailableDates(long campsiteId, Collection<LocalDate> dates) {
+    if (dates.isEmpty()) {
+      return List.of();
+    }
+    final var sortedDates = dates.stream().sorted().collect(Collectors.toList());
+    final var availableDates = getAvailabilities(campsiteId, sortedDates.get(0),
+        sortedDates.get(sortedDates.size() - 1).plusDays(1));
+    sortedDates.removeAll(availableDates);
+    return sortedDates;
+  }
+
+  /**
+   * Returns the sold out dates of the campsite between startInclusive and endExclusive. The days that are not
+   * provisioned are not returned.
+   */
+  public List<LocalDate> findSoldOutDates(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    return dailyInventoryRepository.findSoldOutDatesBetween(campsiteId, startInclusive, endExclusive);
+  }
+
+  /**
+   * Returns all the sold out dates of the campsite.
+   */
+  public List<LocalDate> findSoldOutDates(long campsiteId) {
+    return dailyInventoryRepository.findSoldOutDates(campsiteId);
+  }
+
+  /**
+   * Returns the dates of the campsite with at least 1 remaining pitch between startInclusive and endExclusive.
+   */
+  public List<LocalDate> getAvailabilities(long campsiteId, LocalDate startInclusive, LocalDate endExclusive) {
+    return dailyInventoryRepository.findAvailableDatesBetween(campsiteId, startInclusive, endExclusive);
+  }
+}
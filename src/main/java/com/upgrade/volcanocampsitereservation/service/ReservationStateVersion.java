@@ -0,0 +1,43 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of the reservation state of each campsite, incremented after the commit of every booking change
+ * of the campsite.
+ * <p>As long as the version does not change, the responses of the read operations of the campsite do not change
+ * either, so the version is used to build the ETag of these responses. A booking at a campsite does not invalidate the
+ * responses cached for the other campsites.</p>
+ * <p>The version is prefixed by an identifier of the application instance, so that the versions of 2 replicas (or
+ * of 2 executions of the same replica) are never equal.</p>
+ */
+@Component
+public class ReservationStateVersion {
+
+  private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+  private final ConcurrentMap<Long, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the current version of the campsite, e.g. "1f3a9c2e.42".
+   */
+  public String current(long campsiteId) {
+    final var counter = counters.get(campsiteId);
+    return instanceId + "." + (counter == null ? 0 : counter.get());
+  }
+
+  // Incremented after the other listeners (e.g. AvailabilityIndex) have applied the change
+  @Order
+  @TransactionalEventListener
+  public void onBookingChanged(BookingChangedEvent event) {
+    counters.computeIfAbsent(event.getCampsiteId(), campsiteId -> new AtomicLong()).incrementAndGet();
+  }
+}
@@ -1,8 +1,13 @@
 package com.upgrade.volcanocampsitereservation.utils;
 
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
+
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Utils {
   private Utils() {
@@ -24,4 +29,51 @@ public class Utils {
     }
     return startInclusive.datesUntil(endExclusive).collect(Collectors.toList());
   }
+
+  /**
+   * Returns the email in lower case (independently of the default locale of the JVM), or null. The bookings are looked
+   * up with the normalized email (See {@code BookingDto#getEmailKey}).
+   */
+  public static String normalizeEmail(String email) {
+    return email == null ? null : email.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the free intervals between startInclusive and endExclusive, computed in one pass over the sorted
+   * reserved dates.
+   * <p>Example:</p>
+   * <pre>freeIntervals('2022-10-22', '2022-10-28', ['2022-10-24', '2022-10-25']) returns:
+   *  - ['2022-10-22', '2022-10-24')
+   *  - ['2022-10-26', '2022-10-28')</pre>
+   *
+   * @param sortedReservedDates reserved dates sorted in ascending order.
+   * @return a list of intervals.
+   */
+  public static List<AvailabilityInterval> getFreeIntervals(LocalDate startInclusive, LocalDate endExclusive,
+                                                            Stream<LocalDate> sortedReservedDates) {
+    final var intervals = new ArrayList<AvailabilityInterval>();
+    var freeStart = startInclusive;
+    final var iterator = sortedReservedDates.iterator();
+    while (iterator.hasNext() && freeStart.isBefore(endExclusive)) {
+      final var reservedDate = iterator.next();
+      if (reservedDate.isBefore(freeStart)) {
+        continue;
+      }
+      if (reservedDate.isAfter(freeStart)) {
+        intervals.add(interval(freeStart, reservedDate.isBefore(endExclusive) ? reservedDate : endExclusive));
+      }
+      freeStart = reservedDate.plusDays(1);
+    }
+    if (freeStart.isBefore(endExclusive)) {
+      intervals.add(interval(freeStart, endExclusive));
+    }
+    return intervals;
+  }
+
+  private static AvailabilityInterval interval(LocalDate startInclusive, LocalDate endExclusive) {
+    return AvailabilityInterval.builder()
+        .start(startInclusive)
+        .endExclusive(endExclusive)
+        .build();
+  }
 }
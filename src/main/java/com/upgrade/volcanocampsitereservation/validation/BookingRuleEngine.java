@@ -0,0 +1,77 @@
+package com.upgrade.volcanocampsitereservation.validation;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the {@link BookingRuleSet} of today, compiled from {@code campsite.max-reserved-days},
+ * {@code campsite.min-days-ahead-of-arrival} and {@code campsite.reservation-max-days-in-advance}.
+ * <p>The rule set is recompiled on the first validation after midnight (in the zone of the {@link Clock}), and by
+ * {@link #reload} after a change of the configuration (See {@link BookingRulesEndpoint}). The validations in
+ * progress keep the rule set they started with.</p>
+ * <p>A rule set is always compiled from the values of 1 rule set or 1 reload, never from the configuration while it
+ * is being changed. The rollover at midnight is published with a compare-and-set: it never replaces a rule set
+ * reloaded in the meantime.</p>
+ */
+@Component
+@Slf4j
+public class BookingRuleEngine {
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final Clock clock;
+
+  private final AtomicReference<BookingRuleSet> ruleSet;
+
+  public BookingRuleEngine(ApplicationConfiguration rsvpConfig, Clock clock) {
+    this.rsvpConfig = rsvpConfig;
+    this.clock = clock;
+    this.ruleSet = new AtomicReference<>(BookingRuleSet.compile(rsvpConfig.getMaxReservedDays(),
+        rsvpConfig.getMinDaysAheadOfArrival(), rsvpConfig.getReservationMaxDaysInAdvance(), clock));
+  }
+
+  /**
+   * Returns the rule set of today.
+   */
+  public BookingRuleSet current() {
+    final var current = ruleSet.get();
+    if (!current.isExpired(clock.millis())) {
+      return current;
+    }
+    // The same rules for the new day. Concurrent validations may compile the same rule set, the first one wins
+    final var rolled = BookingRuleSet.compile(current.getMaxReservedDays(), current.getMinDaysAheadOfArrival(),
+        current.getReservationMaxDaysInAdvance(), clock);
+    if (ruleSet.compareAndSet(current, rolled)) {
+      return rolled;
+    }
+    // Rolled over or reloaded by another thread
+    return ruleSet.get();
+  }
+
+  /**
+   * Recompiles the rule set from the configuration.
+   */
+  public BookingRuleSet reload() {
+    return reload(rsvpConfig.getMaxReservedDays(), rsvpConfig.getMinDaysAheadOfArrival(),
+        rsvpConfig.getReservationMaxDaysInAdvance());
+  }
+
+  /**
+   * Compiles the rule set of the values, and replaces the current one.
+   */
+  public BookingRuleSet reload(long maxReservedDays, long minDaysAheadOfArrival, long reservationMaxDaysInAdvance) {
+    final var reloaded = BookingRuleSet.compile(maxReservedDays, minDaysAheadOfArrival, reservationMaxDaysInAdvance,
+        clock);
+    var current = ruleSet.get();
+    while (!ruleSet.compareAndSet(current, reloaded)) {
+      // Rolled over concurrently: the reloaded values replace the rolled rule set as well
+      current = ruleSet.get();
+    }
+    log.info("Reloaded the booking rules {}", reloaded);
+    return reloaded;
+  }
+}
@@ -0,0 +1,55 @@
+package com.upgrade.volcanocampsitereservation.validation;
+
+import lombok.Value;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * The booking rules compiled for 1 day: the limits of the arrival dates are epoch days, and the messages are
+ * formatted once, so a valid stay is checked with a few comparisons of longs and no allocation.
+ * <p>A rule set is immutable. It is replaced by the {@link BookingRuleEngine} at midnight (with the same rules) and
+ * when the rules are reloaded.</p>
+ */
+@Value
+public class BookingRuleSet {
+
+  long maxReservedDays;
+
+  long minDaysAheadOfArrival;
+
+  long reservationMaxDaysInAdvance;
+
+  // Epoch day of "today"
+  long today;
+
+  // Epoch milli of the next midnight, in the zone of the clock
+  long expiresAtMillis;
+
+  long minArrivalDay;
+
+  long maxArrivalDay;
+
+  String tooLongMessage;
+
+  String tooEarlyMessage;
+
+  String tooLateMessage;
+
+  static BookingRuleSet compile(long maxReservedDays, long minDaysAheadOfArrival, long reservationMaxDaysInAdvance,
+                                Clock clock) {
+    final var today = LocalDate.now(clock);
+    return new BookingRuleSet(maxReservedDays, minDaysAheadOfArrival, reservationMaxDaysInAdvance,
+        today.toEpochDay(),
+        today.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli(),
+        today.toEpochDay() + minDaysAheadOfArrival,
+        today.toEpochDay() + reservationMaxDaysInAdvance,
+        "The campsite can be reserved for maximum " + maxReservedDays + " days",
+        "The campsite can be reserved minimum " + minDaysAheadOfArrival + " day(s) ahead of arrival",
+        "The campsite can be reserved up to " + reservationMaxDaysInAdvance + " day(s) in advance");
+  }
+
+  boolean isExpired(long nowMillis) {
+    return nowMillis >= expiresAtMillis;
+  }
+}
@@ -0,0 +1,71 @@
+package com.upgrade.volcanocampsitereservation.validation;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.service.InventoryService;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint {@code /actuator/bookingrules} to read and change the booking rules without a restart, e.g. for a
+ * seasonal policy: {@code POST {"maxReservedDays": 5}}. The properties that are not in the body keep their value.
+ * <p>The rule set is compiled from the new values and published first, then the change is applied to the
+ * {@link ApplicationConfiguration} and the days of the inventory campsites are provisioned up to the new last day
+ * that can be booked. It is local to the replica, and lost after a restart.</p>
+ * <p>Disabled by default: the endpoint is not authenticated, it must be enabled explicitly
+ * ({@code management.endpoint.bookingrules.enabled}) and exposed on a management port that is not public.</p>
+ */
+@Component
+@Endpoint(id = "bookingrules", enableByDefault = false)
+public class BookingRulesEndpoint {
+
+  private final ApplicationConfiguration rsvpConfig;
+
+  private final BookingRuleEngine ruleEngine;
+
+  private final InventoryService inventoryService;
+
+  public BookingRulesEndpoint(ApplicationConfiguration rsvpConfig, BookingRuleEngine ruleEngine,
+                              InventoryService inventoryService) {
+    this.rsvpConfig = rsvpConfig;
+    this.ruleEngine = ruleEngine;
+    this.inventoryService = inventoryService;
+  }
+
+  @ReadOperation
+  public BookingRuleSet rules() {
+    return ruleEngine.current();
+  }
+
+  @WriteOperation
+  public synchronized BookingRuleSet update(@Nullable Long maxReservedDays,
+                                            @Nullable Long minDaysAheadOfArrival,
+                                            @Nullable Long reservationMaxDaysInAdvance) {
+    final long newMaxReservedDays = maxReservedDays == null ? rsvpConfig.getMaxReservedDays() : maxReservedDays;
+    final long newMinDaysAheadOfArrival = minDaysAheadOfArrival == null
+        ? rsvpConfig.getMinDaysAheadOfArrival() : minDaysAheadOfArrival;
+    final long newReservationMaxDaysInAdvance = reservationMaxDaysInAdvance == null
+        ? rsvpConfig.getReservationMaxDaysInAdvance() : reservationMaxDaysInAdvance;
+    if (newMaxReservedDays < 1) {
+      throw invalid("maxReservedDays must be at least 1");
+    }
+    if (newMinDaysAheadOfArrival < 0 || newMinDaysAheadOfArrival > newReservationMaxDaysInAdvance) {
+      throw invalid("minDaysAheadOfArrival must be between 0 and reservationMaxDaysInAdvance");
+    }
+    final var rules = ruleEngine.reload(newMaxReservedDays, newMinDaysAheadOfArrival,
+        newReservationMaxDaysInAdvance);
+    rsvpConfig.setMaxReservedDays(newMaxReservedDays);
+    rsvpConfig.setMinDaysAheadOfArrival(newMinDaysAheadOfArrival);
+    rsvpConfig.setReservationMaxDaysInAdvance(newReservationMaxDaysInAdvance);
+    // The days that can now be booked must be provisioned before the next scheduled provisioning
+    inventoryService.provision();
+    return rules;
+  }
+
+  private static InvalidEndpointRequestException invalid(String message) {
+    return new InvalidEndpointRequestException(message, message);
+  }
+}
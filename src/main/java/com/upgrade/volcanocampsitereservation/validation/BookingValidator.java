@@ -1,22 +1,27 @@
 package com.upgrade.volcanocampsitereservation.validation;
 
-import com.upgrade.volcanocampsitereservation.domain.Booking;
-import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.Stay;
 import org.springframework.stereotype.Component;
 
 import javax.validation.ConstraintValidator;
 import javax.validation.ConstraintValidatorContext;
-import java.time.LocalDate;
 import java.util.Objects;
 
-import static java.time.temporal.ChronoUnit.DAYS;
-
+/**
+ * Checks a stay against the {@link BookingRuleSet} of today. A valid stay does not allocate: the dates are compared
+ * as epoch days, and the messages of the violations are formatted by the rule set.
+ */
 @Component
-public class BookingValidator implements ConstraintValidator<BookingGuideLine, Booking> {
-  private final ApplicationConfiguration rsvpConfig;
+public class BookingValidator implements ConstraintValidator<BookingGuideLine, Stay> {
+
+  private static final String DEPARTURE_BEFORE_ARRIVAL_MESSAGE = "Arrival date should be before departure date";
+
+  private static final String TOO_SHORT_MESSAGE = "The campsite can be reserved for minimum 1 day";
 
-  public BookingValidator(ApplicationConfiguration rsvpConfig) {
-    this.rsvpConfig = rsvpConfig;
+  private final BookingRuleEngine ruleEngine;
+
+  public BookingValidator(BookingRuleEngine ruleEngine) {
+    this.ruleEngine = ruleEngine;
   }
 
   @Override
@@ -25,50 +30,47 @@ public class BookingValidator implements ConstraintValidator<BookingGuideLine, B
   }
 
   @Override
-  public boolean isValid(Booking booking, ConstraintValidatorContext context) {
-    final var arrivalDate = booking.getArrivalDate();
-    final var departureDate = booking.getDepartureDate();
-    final var daysAheadOfArrival = DAYS.between(LocalDate.now(), arrivalDate);
-    var valid = true;
-
+  public boolean isValid(Stay stay, ConstraintValidatorContext context) {
+    final var arrivalDate = stay.getArrivalDate();
+    final var departureDate = stay.getDepartureDate();
     if (Objects.isNull(arrivalDate) || Objects.isNull(departureDate)) {
       // null values are valid
       return true;
     }
-    context.disableDefaultConstraintViolation();
+    final var rules = ruleEngine.current();
+    final var arrivalDay = arrivalDate.toEpochDay();
+    final var stayInDays = departureDate.toEpochDay() - arrivalDay;
+    var valid = true;
 
     // Arrival date should be before departure date
-    if (departureDate.isBefore(arrivalDate)) {
-      valid = invalidErrorMessage(context, "Arrival date should be before departure date");
+    if (stayInDays < 0) {
+      valid = invalidErrorMessage(context, DEPARTURE_BEFORE_ARRIVAL_MESSAGE);
     }
 
     // The campsite can be reserved for min 1 days.
-    final var stayInDays = DAYS.between(arrivalDate, departureDate);
     if (stayInDays < 1) {
-      valid = invalidErrorMessage(context, "The campsite can be reserved for minimum 1 day");
+      valid = invalidErrorMessage(context, TOO_SHORT_MESSAGE);
     }
 
     // The campsite can be reserved for max 3 days.
-    final var maxStayInDays = rsvpConfig.getMaxReservedDays();
-    if (stayInDays > maxStayInDays) {
-      valid = invalidErrorMessage(context, "The campsite can be reserved for maximum " + maxStayInDays + " days");
+    if (stayInDays > rules.getMaxReservedDays()) {
+      valid = invalidErrorMessage(context, rules.getTooLongMessage());
     }
 
     // The campsite can be reserved minimum 1 day(s) ahead of arrival
-    final var minDaysAheadOfArrival = rsvpConfig.getMinDaysAheadOfArrival();
-    if (daysAheadOfArrival < minDaysAheadOfArrival) {
-      valid = invalidErrorMessage(context, "The campsite can be reserved minimum " + minDaysAheadOfArrival + " day(s) ahead of arrival");
+    if (arrivalDay < rules.getMinArrivalDay()) {
+      valid = invalidErrorMessage(context, rules.getTooEarlyMessage());
     }
 
     // The campsite can be reserved up to 1 month in advance.
-    final var maxDaysAheadOfArrival = rsvpConfig.getReservationMaxDaysInAdvance();
-    if (daysAheadOfArrival > maxDaysAheadOfArrival) {
-      valid = invalidErrorMessage(context, "The campsite can be reserved up to " + maxDaysAheadOfArrival + " day(s) in advance");
+    if (arrivalDay > rules.getMaxArrivalDay()) {
+      valid = invalidErrorMessage(context, rules.getTooLateMessage());
     }
     return valid;
   }
 
   private boolean invalidErrorMessage(ConstraintValidatorContext context, String message) {
+    context.disableDefaultConstraintViolation();
     context
         .buildConstraintViolationWithTemplate(message)
         .addConstraintViolation();
@@ -3,13 +3,18 @@ package com.upgrade.volcanocampsitereservation.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
 import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.BookingCursor;
 import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
 import com.upgrade.volcanocampsitereservation.mock.MockUtils;
 import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
 import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.service.AvailabilityStreamService;
 import com.upgrade.volcanocampsitereservation.service.BookingService;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -21,25 +26,45 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.data.domain.Sort;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.text.MessageFormat;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.upgrade.volcanocampsitereservation.controller.BookingController.BASE_AVAILABLE_PATH;
 import static com.upgrade.volcanocampsitereservation.controller.BookingController.BASE_BOOKING_PATH;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.BASE_CAMPSITE_PATH;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.IDEMPOTENCY_KEY_HEADER;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.IDEMPOTENT_REPLAYED_HEADER;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.NDJSON_MEDIA_TYPE;
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
@@ -48,13 +73,18 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
  * Test the {@link BookingController}.
- * <p>Mock the Repository classes.</p>
+ * <p>Mock the Repository classes. The availability index is disabled so that the availabilities are read from the
+ * mocked {@link BookingDateRepository}, and the cache of the bookings is disabled so that the bookings are read from
+ * the mocked {@link BookingRepository}.</p>
  */
-@SpringBootTest
+@SpringBootTest(properties = {"campsite.availability-index-enabled=false", "campsite.booking-cache-mode=disabled"})
 @AutoConfigureMockMvc
 class BookingControllerTest {
   private final ObjectMapper objectMapper = new ObjectMapper();
@@ -71,6 +101,15 @@ class BookingControllerTest {
   @SpyBean
   private BookingService bookingService;
 
+  @Autowired
+  private AvailabilityStreamService availabilityStreamService;
+
+  @Autowired
+  private AdmissionControlInterceptor admissionControlInterceptor;
+
+  @Autowired
+  private ApplicationConfiguration rsvpConfig;
+
   private static Stream<Arguments> addBooking_invalid_source() {
     return Stream.of(
         Arguments.of(MockUtils.createBookingTooEarly(), "The campsite can be reserved minimum 1 day(s) ahead of arrival."),
@@ -100,19 +139,92 @@ class BookingControllerTest {
     final var bookingDtoList = List.of(MockUtils.createBookingDtoWithId());
     final var bookingList = bookingDtoList.stream().map(Booking::createFrom).collect(Collectors.toList());
     final var bookingListJson = objectMapper.writeValueAsString(bookingList);
-    when(bookingRepository.findAll(any(Sort.class))).thenReturn(bookingDtoList);
+    when(bookingRepository.findPage(eq(DEFAULT_CAMPSITE_ID), any(), any(), any(), any(), anyLong(), any()))
+        .thenReturn(new SliceImpl<>(bookingList));
     mockMvc.perform(get(BASE_BOOKING_PATH))
         .andDo(print())
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-        .andExpect(content().json(bookingListJson));
+        .andExpect(content().json(bookingListJson))
+        .andExpect(header().doesNotExist(HttpHeaders.LINK));
+  }
+
+  @Test
+  void getBookingList_nextPage() throws Exception {
+    final var bookingDto = MockUtils.createBookingDtoWithId();
+    final var cursor = new BookingCursor(bookingDto.getArrivalDate(), bookingDto.getId());
+    when(bookingRepository.findPage(eq(DEFAULT_CAMPSITE_ID), any(), any(), any(), any(), anyLong(), any()))
+        .thenReturn(new SliceImpl<>(List.of(Booking.createFrom(bookingDto)), PageRequest.of(0, 1), true));
+    mockMvc.perform(get(BASE_BOOKING_PATH + "?size=1&arrivalFrom={from}", bookingDto.getArrivalDate()))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(header().string(HttpHeaders.LINK, "<http://localhost" + BASE_BOOKING_PATH + "?size=1&arrivalFrom="
+            + bookingDto.getArrivalDate() + "&after=" + cursor.encode() + ">; rel=\"next\""));
+
+    mockMvc.perform(get(BASE_BOOKING_PATH + "?size=1&after={after}", cursor.encode()))
+        .andExpect(status().isOk());
+    // The next page starts after the booking of the cursor
+    verify(bookingRepository).findPage(eq(DEFAULT_CAMPSITE_ID), eq(bookingDto.getArrivalDate()), any(), any(), any(),
+        eq(bookingDto.getId()), eq(PageRequest.of(0, 1)));
+  }
+
+  @Test
+  void exportBookings() throws Exception {
+    final var bookingDto1 = MockUtils.createBookingDtoWithId();
+    final var bookingDto2 = MockUtils.createBookingDtoWithId(bookingDto1.getDepartureDate(), 1);
+    bookingDto2.setId(2);
+    when(bookingRepository.streamAllByCampsiteId(eq(DEFAULT_CAMPSITE_ID), anyInt()))
+        .thenReturn(Stream.of(Booking.createFrom(bookingDto1), Booking.createFrom(bookingDto2)));
+    mockMvc.perform(get(BASE_BOOKING_PATH + "/export"))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(NDJSON_MEDIA_TYPE))
+        .andExpect(content().string(objectMapper.writeValueAsString(Booking.createFrom(bookingDto1)) + "\n"
+            + objectMapper.writeValueAsString(Booking.createFrom(bookingDto2)) + "\n"));
+  }
+
+  @Test
+  void searchBookings() throws Exception {
+    final var bookingDto = MockUtils.createBookingDtoWithId();
+    // The results are cached for the whole test context
+    final var email = UUID.randomUUID() + "@email.com";
+    bookingDto.setEmail(email);
+    when(bookingRepository.findAllByEmail(email, DEFAULT_CAMPSITE_ID)).thenReturn(List.of(bookingDto));
+    final var bookingListJson = objectMapper.writeValueAsString(List.of(Booking.createFrom(bookingDto)));
+
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get(BASE_BOOKING_PATH + "/search").param("email", email))
+          .andDo(print())
+          .andExpect(status().isOk())
+          .andExpect(content().json(bookingListJson));
+    }
+    verify(bookingRepository, times(1)).findAllByEmail(email, DEFAULT_CAMPSITE_ID);
+
+    mockMvc.perform(get(BASE_BOOKING_PATH + "/search").param("email", " "))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string(containsString("The email is required")));
+  }
+
+  @Test
+  void getBookingList_invalidPage() throws Exception {
+    mockMvc.perform(get(BASE_BOOKING_PATH + "?size=1001"))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string(containsString("The size of a page is between 1 and 1000")));
+    mockMvc.perform(get(BASE_BOOKING_PATH + "?after=invalid"))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string(containsString("Invalid cursor invalid")));
   }
 
   @Test
   void getBookingDtoList_empty() throws Exception {
-    final List<BookingDto> bookingDtoList = List.of();
-    final var bookingDtoListJson = objectMapper.writeValueAsString(bookingDtoList);
-    when(bookingRepository.findAll(any(Sort.class))).thenReturn(bookingDtoList);
+    final List<Booking> bookingList = List.of();
+    final var bookingDtoListJson = objectMapper.writeValueAsString(bookingList);
+    when(bookingRepository.findPage(eq(DEFAULT_CAMPSITE_ID), any(), any(), any(), any(), anyLong(), any()))
+        .thenReturn(new SliceImpl<>(bookingList));
     mockMvc.perform(get(BASE_BOOKING_PATH))
         .andDo(print())
         .andExpect(status().isOk())
@@ -124,7 +236,7 @@ class BookingControllerTest {
   void getBooking_success() throws Exception {
     final var bookingDto = MockUtils.createBookingDtoWithId();
     final var bookingDtoJson = objectMapper.writeValueAsString(Booking.createFrom(bookingDto));
-    when(bookingRepository.findById(bookingDto.getId())).thenReturn(Optional.of(bookingDto));
+    when(bookingRepository.findDetachedById(bookingDto.getId())).thenReturn(Optional.of(bookingDto));
     mockMvc.perform(get(BASE_BOOKING_PATH + "/" + bookingDto.getId()))
         .andDo(print())
         .andExpect(status().isOk())
@@ -132,10 +244,41 @@ class BookingControllerTest {
         .andExpect(content().json(bookingDtoJson));
   }
 
+  @Test
+  void getBooking_notModified() throws Exception {
+    final var bookingDto = MockUtils.createBookingDtoWithId();
+    when(bookingRepository.findDetachedById(bookingDto.getId())).thenReturn(Optional.of(bookingDto));
+    final var etag = mockMvc.perform(get(BASE_BOOKING_PATH + "/" + bookingDto.getId()))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mockMvc.perform(get(BASE_BOOKING_PATH + "/" + bookingDto.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andDo(print())
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andExpect(content().string(""));
+
+    // The second request is answered without reading the booking
+    verify(bookingRepository, times(1)).findById(bookingDto.getId());
+  }
+
+  @Test
+  void getBooking_modified() throws Exception {
+    final var bookingDto = MockUtils.createBookingDtoWithId();
+    when(bookingRepository.findDetachedById(bookingDto.getId())).thenReturn(Optional.of(bookingDto));
+
+    mockMvc.perform(get(BASE_BOOKING_PATH + "/" + bookingDto.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + bookingDto.getId() + "-5-unknown\""))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG));
+  }
+
   @Test
   void getBooking_unknown() throws Exception {
     final var bookingDto = MockUtils.createBookingDtoWithId();
-    when(bookingRepository.findById(bookingDto.getId())).thenReturn(Optional.empty());
+    when(bookingRepository.findDetachedById(bookingDto.getId())).thenReturn(Optional.empty());
     mockMvc.perform(get(BASE_BOOKING_PATH + "/" + bookingDto.getId()))
         .andDo(print())
         .andExpect(status().isNotFound())
@@ -143,6 +286,16 @@ class BookingControllerTest {
         .andExpect(content().string(containsString("Could not find booking with id " + bookingDto.getId())));
   }
 
+  @Test
+  void getBooking_otherCampsite() throws Exception {
+    final var bookingDto = MockUtils.createBookingDtoWithId();
+    when(bookingRepository.findDetachedById(bookingDto.getId())).thenReturn(Optional.of(bookingDto));
+    mockMvc.perform(get(BASE_CAMPSITE_PATH + BASE_BOOKING_PATH + "/" + bookingDto.getId(), 2))
+        .andDo(print())
+        .andExpect(status().isNotFound())
+        .andExpect(content().string(containsString("Could not find booking with id " + bookingDto.getId())));
+  }
+
   @Test
   void addBooking_success() throws Exception {
     final var booking = MockUtils.createValidBooking();
@@ -178,6 +331,37 @@ class BookingControllerTest {
         .andExpect(content().string(containsString(message)));
   }
 
+  @Test
+  void addBooking_idempotencyKey() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    final var bookingJson = objectMapper.writeValueAsString(booking);
+    final var idempotencyKey = UUID.randomUUID().toString();
+    when(bookingRepository.save(any())).then(returnsFirstArg());
+    mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson)
+            .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(IDEMPOTENT_REPLAYED_HEADER))
+        .andExpect(content().json(bookingJson));
+    mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson)
+            .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(header().string(IDEMPOTENT_REPLAYED_HEADER, "true"))
+        .andExpect(content().json(bookingJson));
+    verify(bookingRepository, times(1)).save(any());
+  }
+
+  @Test
+  void addBooking_idempotencyKeyTooLong() throws Exception {
+    final var bookingJson = objectMapper.writeValueAsString(MockUtils.createValidBooking());
+    mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson)
+            .header(IDEMPOTENCY_KEY_HEADER, "k".repeat(256)))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string(containsString("Idempotency-Key must contain 1 to 255 characters")));
+  }
+
   @Test
   void addBooking_internalServerError() throws Exception {
     final var booking = MockUtils.createValidBooking();
@@ -190,13 +374,116 @@ class BookingControllerTest {
         .andExpect(content().string(containsString("java.lang.RuntimeException: exception message")));
   }
 
+  @Test
+  void addBooking_transientFailure() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    final var bookingJson = objectMapper.writeValueAsString(booking);
+    when(bookingDateRepository.findAllDatesBetween(anyLong(), any(), any()))
+        .thenThrow(new CannotAcquireLockException("lock timeout"));
+    mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson))
+        .andDo(print())
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+        .andExpect(content().string(containsString("lock timeout")));
+    // Retried until the time budget is exhausted
+    verify(bookingDateRepository, atLeast(2)).findAllDatesBetween(anyLong(), any(), any());
+  }
+
+  @Test
+  void addBooking_duplicateKey() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    final var bookingJson = objectMapper.writeValueAsString(booking);
+    doThrow(new DataIntegrityViolationException("duplicate key")).when(bookingDateRepository).insertAll(any());
+    mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson))
+        .andDo(print())
+        .andExpect(status().isConflict())
+        .andExpect(content().string(containsString("Selected dates are not available to be reserved")));
+    verify(bookingDateRepository, times(1)).insertAll(any());
+  }
+
+  @Test
+  void addBookings() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    final var invalidBooking = MockUtils.createBookingWithDepartureBeforeArrival();
+    final var overlappingBooking = MockUtils.createBooking(booking.getArrivalDate(), 1);
+    final var bookingsJson = objectMapper.writeValueAsString(List.of(booking, invalidBooking, overlappingBooking));
+    when(bookingRepository.saveAll(any())).then(returnsFirstArg());
+    mockMvc.perform(post(BASE_BOOKING_PATH + "/batch").contentType(MediaType.APPLICATION_JSON).content(bookingsJson))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$[0].status").value("OK"))
+        .andExpect(jsonPath("$[0].booking.arrivalDate").value(booking.getArrivalDate().toString()))
+        .andExpect(jsonPath("$[1].status").value("BAD_REQUEST"))
+        .andExpect(jsonPath("$[1].message").value(containsString("Arrival date should be before departure date")))
+        .andExpect(jsonPath("$[2].status").value("CONFLICT"));
+    // 1 range query for the whole batch
+    verify(bookingDateRepository, times(1)).findAllDatesBetween(anyLong(), any(), any());
+  }
+
+  @Test
+  void addBooking_overloaded() throws Exception {
+    final var bookingJson = objectMapper.writeValueAsString(MockUtils.createValidBooking());
+    // All the write permits are taken: the request is rejected after campsite.admission-write-queue-timeout
+    final var requests = new ArrayList<MockHttpServletRequest>();
+    try {
+      for (int i = 0; i < rsvpConfig.getAdmissionWriteMaxConcurrent(); i++) {
+        final var request = new MockHttpServletRequest("POST", BASE_BOOKING_PATH);
+        admissionControlInterceptor.preHandle(request, new MockHttpServletResponse(), new Object());
+        requests.add(request);
+      }
+      mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson))
+          .andDo(print())
+          .andExpect(status().isServiceUnavailable())
+          .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+          .andExpect(content().string(containsString("Too many write requests, please retry later")));
+    } finally {
+      requests.forEach(request -> admissionControlInterceptor.afterCompletion(request, new MockHttpServletResponse(),
+          new Object(), null));
+    }
+    verify(bookingService, times(0)).add(any(), any());
+  }
+
+  @Test
+  void exportBookings_notAdmissionControlled() throws Exception {
+    when(bookingRepository.streamAllByCampsiteId(eq(DEFAULT_CAMPSITE_ID), anyInt())).thenReturn(Stream.empty());
+    // All the read permits are taken: the export is not behind the read bulkhead
+    final var requests = new ArrayList<MockHttpServletRequest>();
+    try {
+      for (int i = 0; i < rsvpConfig.getAdmissionReadMaxConcurrent(); i++) {
+        final var request = new MockHttpServletRequest("GET", BASE_BOOKING_PATH);
+        admissionControlInterceptor.preHandle(request, new MockHttpServletResponse(), new Object());
+        requests.add(request);
+      }
+      mockMvc.perform(get(BASE_BOOKING_PATH + "/export"))
+          .andDo(print())
+          .andExpect(status().isOk());
+    } finally {
+      requests.forEach(request -> admissionControlInterceptor.afterCompletion(request, new MockHttpServletResponse(),
+          new Object(), null));
+    }
+  }
+
+  @Test
+  void addBookings_nullBooking() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    final var bookingsJson = "[null, " + objectMapper.writeValueAsString(booking) + "]";
+    when(bookingRepository.saveAll(any())).then(returnsFirstArg());
+    mockMvc.perform(post(BASE_BOOKING_PATH + "/batch").contentType(MediaType.APPLICATION_JSON).content(bookingsJson))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].status").value("BAD_REQUEST"))
+        .andExpect(jsonPath("$[0].message").value("The booking is required."))
+        .andExpect(jsonPath("$[1].status").value("OK"));
+  }
+
   @Test
   void addBooking_notAvailable() throws Exception {
     final var booking = MockUtils.createValidBooking();
     final var bookingJson = objectMapper.writeValueAsString(booking);
     // A date within the booking dates is already booked
     final var alreadyBookedDate = booking.getArrivalDate();
-    when(bookingDateRepository.findAllDatesBetween(any(), any()))
+    when(bookingDateRepository.findAllDatesBetween(anyLong(), any(), any()))
         .thenReturn(Stream.of(BookingDateDto.builder().date(alreadyBookedDate).build()));
     mockMvc.perform(post(BASE_BOOKING_PATH).contentType(MediaType.APPLICATION_JSON).content(bookingJson))
         .andDo(print())
@@ -212,8 +499,8 @@ class BookingControllerTest {
     final var newBooking = MockUtils.createBooking(LocalDate.now().plusDays(2), 3);
     final var bookingJson = objectMapper.writeValueAsString(newBooking);
     final var expectedBookingDto = BookingDto.createFrom(newBooking);
-    when(bookingRepository.findById(any())).thenReturn(Optional.of(BookingDto.createFrom(oldBooking)));
-    when(bookingRepository.save(expectedBookingDto)).then(returnsFirstArg());
+    when(bookingRepository.findDetachedById(anyLong())).thenReturn(Optional.of(BookingDto.createFrom(oldBooking)));
+    when(bookingRepository.saveAndFlush(expectedBookingDto)).then(returnsFirstArg());
     mockMvc.perform(put(BASE_BOOKING_PATH + "/1").contentType(MediaType.APPLICATION_JSON).content(bookingJson))
         .andDo(print())
         .andExpect(status().isOk())
@@ -223,6 +510,8 @@ class BookingControllerTest {
 
   @Test
   void deleteBooking_success() throws Exception {
+    when(bookingRepository.findStayByCampsiteIdAndId(DEFAULT_CAMPSITE_ID, 1))
+        .thenReturn(Optional.of(MockUtils.createStay(LocalDate.now(), 2)));
     mockMvc.perform(delete(BASE_BOOKING_PATH + "/1"))
         .andDo(print())
         .andExpect(status().isOk());
@@ -230,7 +519,7 @@ class BookingControllerTest {
 
   @Test
   void deleteBooking_failure() throws Exception {
-    doThrow(EmptyResultDataAccessException.class).when(bookingRepository).deleteById(any());
+    when(bookingRepository.findStayByCampsiteIdAndId(DEFAULT_CAMPSITE_ID, 1)).thenReturn(Optional.empty());
     mockMvc.perform(delete(BASE_BOOKING_PATH + "/1"))
         .andDo(print())
         .andExpect(status().isNotFound())
@@ -252,7 +541,7 @@ class BookingControllerTest {
   @Test
   void getBookingAvailabilities_1Booking() throws Exception {
     final var bookingDates = MockUtils.bookingDatesDto("2022-01-29", 2);
-    when(bookingDateRepository.quickFindAllDatesBetween(any(), any())).thenReturn(bookingDates);
+    when(bookingDateRepository.quickFindAllDatesBetween(anyLong(), any(), any())).thenReturn(bookingDates);
     mockMvc.perform(get(BASE_AVAILABLE_PATH)
         .queryParam("startDate", "2022-01-28")
         .queryParam("endDate", "2022-02-03"))
@@ -267,7 +556,7 @@ class BookingControllerTest {
     final var bookingDatesDto = Stream.concat(
         MockUtils.bookingDatesDto("2022-01-29", 2),
         MockUtils.bookingDatesDto("2022-02-01", 1));
-    when(bookingDateRepository.quickFindAllDatesBetween(any(), any())).thenReturn(bookingDatesDto);
+    when(bookingDateRepository.quickFindAllDatesBetween(anyLong(), any(), any())).thenReturn(bookingDatesDto);
     mockMvc.perform(get(BASE_AVAILABLE_PATH)
         .queryParam("startDate", "2022-01-28")
         .queryParam("endDate", "2022-02-03"))
@@ -280,7 +569,7 @@ class BookingControllerTest {
   @Test
   void getBookingAvailabilities_1Booking_overlapStartDate() throws Exception {
     final var bookingDatesDto = MockUtils.bookingDatesDto("2022-01-27", 3);
-    when(bookingDateRepository.quickFindAllDatesBetween(any(), any())).thenReturn(bookingDatesDto);
+    when(bookingDateRepository.quickFindAllDatesBetween(anyLong(), any(), any())).thenReturn(bookingDatesDto);
     mockMvc.perform(get(BASE_AVAILABLE_PATH)
         .queryParam("startDate", "2022-01-28")
         .queryParam("endDate", "2022-02-03"))
@@ -293,7 +582,7 @@ class BookingControllerTest {
   @Test
   void getBookingAvailabilities_1Booking_overlapEndDate() throws Exception {
     final var bookingDatesDto = MockUtils.bookingDatesDto("2022-02-02", 3);
-    when(bookingDateRepository.quickFindAllDatesBetween(any(), any())).thenReturn(bookingDatesDto);
+    when(bookingDateRepository.quickFindAllDatesBetween(anyLong(), any(), any())).thenReturn(bookingDatesDto);
     mockMvc.perform(get(BASE_AVAILABLE_PATH)
         .queryParam("startDate", "2022-01-28")
         .queryParam("endDate", "2022-02-03"))
@@ -303,6 +592,46 @@ class BookingControllerTest {
         .andExpect(content().json("[2022-01-28, 2022-01-29, 2022-01-30, 2022-01-31, 2022-02-01]"));
   }
 
+  @Test
+  void getBookingAvailabilityIntervals() throws Exception {
+    final var bookingDatesDto = Stream.concat(
+        MockUtils.bookingDatesDto("2022-01-29", 2),
+        MockUtils.bookingDatesDto("2022-02-01", 1));
+    when(bookingDateRepository.quickFindAllSortedDatesBetween(anyLong(), any(), any()))
+        .thenReturn(bookingDatesDto);
+    mockMvc.perform(get(BASE_AVAILABLE_PATH)
+        .queryParam("startDate", "2022-01-28")
+        .queryParam("endDate", "2022-02-03")
+        .queryParam("format", "intervals"))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(content().json("[{start: 2022-01-28, endExclusive: 2022-01-29}," +
+            " {start: 2022-01-31, endExclusive: 2022-02-01}," +
+            " {start: 2022-02-02, endExclusive: 2022-02-03}]"));
+  }
+
+  @Test
+  void getBookingAvailabilities_notModified() throws Exception {
+    final var etag = mockMvc.perform(get(BASE_AVAILABLE_PATH)
+            .queryParam("startDate", "2022-01-28")
+            .queryParam("endDate", "2022-02-03"))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mockMvc.perform(get(BASE_AVAILABLE_PATH)
+            .queryParam("startDate", "2022-01-28")
+            .queryParam("endDate", "2022-02-03")
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andDo(print())
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    // The second request is answered without computing the availabilities
+    verify(bookingService, times(1)).getAvailabilities(anyLong(), any(), any());
+  }
+
   @Test
   void getBookingAvailabilities_no_param() throws Exception {
     final var argumentCaptor = ArgumentCaptor.forClass(LocalDate.class);
@@ -312,7 +641,8 @@ class BookingControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_JSON));
 
-    verify(bookingService).getAvailabilities(argumentCaptor.capture(), argumentCaptor.capture());
+    verify(bookingService)
+        .getAvailabilities(eq(DEFAULT_CAMPSITE_ID), argumentCaptor.capture(), argumentCaptor.capture());
     assertThat(argumentCaptor.getAllValues()).containsExactly(LocalDate.now(), LocalDate.now().plusMonths(1));
   }
 
@@ -328,7 +658,8 @@ class BookingControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_JSON));
 
-    verify(bookingService).getAvailabilities(argumentCaptor.capture(), argumentCaptor.capture());
+    verify(bookingService)
+        .getAvailabilities(eq(DEFAULT_CAMPSITE_ID), argumentCaptor.capture(), argumentCaptor.capture());
     assertThat(argumentCaptor.getAllValues()).containsExactly(startDate, startDate.plusMonths(1));
   }
 
@@ -343,10 +674,32 @@ class BookingControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().contentType(MediaType.APPLICATION_JSON));
 
-    verify(bookingService).getAvailabilities(argumentCaptor.capture(), argumentCaptor.capture());
+    verify(bookingService)
+        .getAvailabilities(eq(DEFAULT_CAMPSITE_ID), argumentCaptor.capture(), argumentCaptor.capture());
     assertThat(argumentCaptor.getAllValues()).containsExactly(LocalDate.now(), endDate);
   }
 
+  @Test
+  void getBookingAvailabilities_campsite() throws Exception {
+    final var argumentCaptor = ArgumentCaptor.forClass(LocalDate.class);
+
+    mockMvc.perform(get(BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH, 2))
+        .andDo(print())
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+
+    verify(bookingService).getAvailabilities(eq(2L), argumentCaptor.capture(), argumentCaptor.capture());
+    assertThat(argumentCaptor.getAllValues()).containsExactly(LocalDate.now(), LocalDate.now().plusMonths(1));
+  }
+
+  @Test
+  void getBookingAvailabilities_unknownCampsite() throws Exception {
+    mockMvc.perform(get(BASE_CAMPSITE_PATH + BASE_AVAILABLE_PATH, 4))
+        .andDo(print())
+        .andExpect(status().isNotFound())
+        .andExpect(content().string(containsString("Could not find campsite with id 4")));
+  }
+
   @Test
   void getBookingAvailabilities_start_after_end() throws Exception {
     mockMvc.perform(get(BASE_AVAILABLE_PATH)
@@ -358,4 +711,66 @@ class BookingControllerTest {
         .andExpect(content().string(containsString("Start date 2022-01-02 is after end date 2022-01-01")));
   }
 
-}
\ No newline at end of file
+  @Test
+  void streamBookingAvailabilities() throws Exception {
+    final var mvcResult = mockMvc.perform(get(BASE_AVAILABLE_PATH + "/stream")
+            .queryParam("startDate", "2022-01-28")
+            .queryParam("endDate", "2022-01-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    // The current state of the changed days is streamed
+    doReturn(Utils.getDatesBetween(LocalDate.parse("2022-01-30"), LocalDate.parse("2022-02-05")))
+        .when(bookingService).getAvailabilities(DEFAULT_CAMPSITE_ID, LocalDate.parse("2022-01-29"),
+            LocalDate.parse("2022-02-06"));
+    // Only the dates of the subscribed range are streamed
+    availabilityStreamService.onBookingChanged(BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .reservedDate(LocalDate.parse("2022-01-29"))
+        .reservedDate(LocalDate.parse("2022-02-05"))
+        .build());
+
+    // The events are sent asynchronously
+    final var response = mvcResult.getResponse();
+    for (int i = 0; i < 50 && !response.getContentAsString().contains("event:change"); i++) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    assertThat(response.getContentAsString())
+        .contains("event:snapshot\ndata:[\"2022-01-28\",\"2022-01-29\",\"2022-01-30\"]")
+        .contains("event:change\ndata:{\"available\":[],\"reserved\":[\"2022-01-29\"]}");
+  }
+
+  @Test
+  void streamBookingAvailabilities_outOfOrder() throws Exception {
+    final var date = LocalDate.parse("2022-01-29");
+    final var mvcResult = mockMvc.perform(get(BASE_AVAILABLE_PATH + "/stream")
+            .queryParam("startDate", "2022-01-28")
+            .queryParam("endDate", "2022-01-31"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    // Reserved then released: the day is available
+    doReturn(List.of(date)).when(bookingService).getAvailabilities(DEFAULT_CAMPSITE_ID, date, date.plusDays(1));
+
+    // The listener of the release runs before the listener of the reservation
+    availabilityStreamService.onBookingChanged(BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .releasedDate(date)
+        .build());
+    availabilityStreamService.onBookingChanged(BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .reservedDate(date)
+        .build());
+
+    final var response = mvcResult.getResponse();
+    final var change = "event:change\ndata:{\"available\":[\"2022-01-29\"],\"reserved\":[]}";
+    for (int i = 0; i < 50 && response.getContentAsString().split(Pattern.quote(change), -1).length < 3; i++) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+    // The late reservation does not mark the day as reserved
+    assertThat(response.getContentAsString().split(Pattern.quote(change), -1)).hasSize(3);
+    assertThat(response.getContentAsString()).doesNotContain("\"reserved\":[\"2022-01-29\"]");
+  }
+}
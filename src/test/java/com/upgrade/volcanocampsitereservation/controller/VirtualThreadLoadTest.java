@@ -0,0 +1,127 @@
+package com.upgrade.volcanocampsitereservation.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.volcanocampsitereservation.VolcanoCampsiteReservationApplication;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.service.DateLockManager;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.BASE_AVAILABLE_PATH;
+import static com.upgrade.volcanocampsitereservation.controller.BookingController.BASE_BOOKING_PATH;
+
+/**
+ * Load test of the request execution with the Tomcat thread pool and with virtual threads (See
+ * {@code campsite.virtual-threads}).
+ * <p>The dates of a booking are locked by the test (striped-lock strategy) while many requests try to reserve them,
+ * then the availabilities are requested: with a small thread pool, the reads wait for the threads blocked on the
+ * lock, with virtual threads they do not.</p>
+ * <p>A benchmark (run with {@code ./gradlew benchmark}): the latencies depend on the machine, so they are logged and
+ * not compared.</p>
+ */
+@Tag("benchmark")
+@Slf4j
+class VirtualThreadLoadTest {
+
+  private static final int TOMCAT_THREADS = 16;
+
+  private static final int BLOCKED_WRITES = 64;
+
+  private static final int READS = 200;
+
+  private static final Duration LOCK_DURATION = Duration.ofSeconds(1);
+
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+
+  @Test
+  void readsWhileWritesAreBlocked() throws Exception {
+    final var platformThreadsP99 = measure(false);
+    final var virtualThreadsP99 = measure(true);
+
+    log.info("p99 latency of the reads: {} ms with platform threads, {} ms with virtual threads", platformThreadsP99,
+        virtualThreadsP99);
+  }
+
+  /**
+   * Returns the p99 latency of the reads, in ms.
+   */
+  private long measure(boolean virtualThreads) throws Exception {
+    try (var context = start(virtualThreads)) {
+      final var baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+      final var booking = MockUtils.createValidBooking();
+      final var bookingJson = context.getBean(ObjectMapper.class).writeValueAsString(booking);
+      final var dates = Utils.getDatesBetween(booking.getArrivalDate(), booking.getDepartureDate());
+
+      final List<CompletableFuture<HttpResponse<String>>> writes = new ArrayList<>();
+      final var latencies = new long[READS];
+      final var reads = new ArrayList<CompletableFuture<Void>>();
+      final long start;
+      try (var ignored = context.getBean(DateLockManager.class).lock(DEFAULT_CAMPSITE_ID, dates)) {
+        for (int i = 0; i < BLOCKED_WRITES; i++) {
+          writes.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + BASE_BOOKING_PATH))
+              .header("Content-Type", "application/json")
+              .POST(HttpRequest.BodyPublishers.ofString(bookingJson))
+              .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        // The writes are blocked on the date locks
+        TimeUnit.MILLISECONDS.sleep(200);
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+          final var index = i;
+          final var sentAt = System.nanoTime();
+          reads.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + BASE_AVAILABLE_PATH)).build(),
+                  HttpResponse.BodyHandlers.discarding())
+              .thenAccept(response -> latencies[index] = System.nanoTime() - sentAt));
+        }
+        // The locks are released after LOCK_DURATION, or when all the reads completed
+        try {
+          CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new))
+              .get(LOCK_DURATION.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          log.info("The reads are still waiting after {} ms", LOCK_DURATION.toMillis());
+        }
+      }
+      CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+      final var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+      Arrays.sort(latencies);
+      final var p99 = TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(READS * 0.99) - 1]);
+      log.info("{}: {} reads in {} ms ({} reads/s), p99 latency {} ms, with {} blocked writes",
+          virtualThreads ? "Virtual threads" : "Platform threads (" + TOMCAT_THREADS + ")",
+          READS, elapsedMillis, READS * 1000L / Math.max(elapsedMillis, 1), p99, BLOCKED_WRITES);
+      return p99;
+    }
+  }
+
+  private static ConfigurableApplicationContext start(boolean virtualThreads) {
+    return new SpringApplicationBuilder(VolcanoCampsiteReservationApplication.class)
+        .properties(
+            "server.port=0",
+            "server.tomcat.threads.max=" + TOMCAT_THREADS,
+            "campsite.virtual-threads=" + virtualThreads,
+            "campsite.concurrency-strategy=striped-lock",
+            "campsite.date-lock-timeout=PT10S",
+            // Measures the thread model alone, the admission control would reject the writes
+            "campsite.admission-control-enabled=false")
+        .run();
+  }
+}
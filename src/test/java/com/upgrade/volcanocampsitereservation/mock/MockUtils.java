@@ -3,6 +3,7 @@ package com.upgrade.volcanocampsitereservation.mock;
 import com.upgrade.volcanocampsitereservation.domain.Booking;
 import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository.BookingStay;
 
 import java.time.LocalDate;
 import java.util.stream.Stream;
@@ -69,10 +70,29 @@ public class MockUtils {
     return createBooking(LocalDate.now().plusDays(2), -1);
   }
 
+  public static BookingStay createStay(LocalDate arrivalDate, int numberOfDays) {
+    return new BookingStay() {
+      @Override
+      public LocalDate getArrivalDate() {
+        return arrivalDate;
+      }
+
+      @Override
+      public LocalDate getDepartureDate() {
+        return arrivalDate.plusDays(numberOfDays);
+      }
+
+      @Override
+      public String getEmail() {
+        return "test@email.com";
+      }
+    };
+  }
+
   public static Stream<BookingDateDto> bookingDatesDto(String startInclusive, int numberOfDays) {
     final var start = LocalDate.parse(startInclusive);
     final var end = start.plusDays(numberOfDays);
     return start.datesUntil(end)
-        .map(date -> BookingDateDto.builder().date(date).build());
+        .map(date -> BookingDateDto.builder().campsiteId(BookingDto.DEFAULT_CAMPSITE_ID).date(date).build());
   }
 }
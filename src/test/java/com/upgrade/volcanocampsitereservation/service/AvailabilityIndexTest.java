@@ -0,0 +1,221 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the {@link AvailabilityIndex}.
+ */
+class AvailabilityIndexTest {
+
+  private final BookingDateRepository bookingDateRepository = mock(BookingDateRepository.class);
+
+  private final InventoryService inventoryService = mock(InventoryService.class);
+
+  private final AvailabilityIndex availabilityIndex = new AvailabilityIndex(bookingDateRepository, inventoryService);
+
+  @BeforeEach
+  void setUp() {
+    when(bookingDateRepository.findCampsiteIds()).thenReturn(List.of(DEFAULT_CAMPSITE_ID));
+    when(bookingDateRepository.findDatesByCampsiteId(DEFAULT_CAMPSITE_ID))
+        .thenReturn(MockUtils.bookingDatesDto("2022-01-29", 2).map(BookingDateDto::getDate)
+            .collect(Collectors.toList()));
+    availabilityIndex.load();
+  }
+
+  @Test
+  void load() {
+    assertThat(availabilityIndex.isLoaded()).isTrue();
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-02-02")))
+        .containsExactly(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31"), LocalDate.parse("2022-02-01"));
+  }
+
+  @Test
+  void getAvailabilities_emptyRange() {
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-28")))
+        .isEmpty();
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-20")))
+        .isEmpty();
+  }
+
+  @Test
+  void load_clearsCampsiteWithoutDates() {
+    availabilityIndex.apply(BookingChangedEvent.builder()
+        .bookingId(2)
+        .campsiteId(2)
+        .reservedDate(LocalDate.parse("2022-01-28"))
+        .build(), 1);
+
+    availabilityIndex.load();
+
+    assertThat(availabilityIndex.getAvailabilities(2, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-29")))
+        .containsExactly(LocalDate.parse("2022-01-28"));
+  }
+
+  @Test
+  void onBookingChanged() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      availabilityIndex.onBookingChanged(BookingChangedEvent.builder()
+          .bookingId(1)
+          .campsiteId(DEFAULT_CAMPSITE_ID)
+          .releasedDates(List.of(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30")))
+          .reservedDates(List.of(LocalDate.parse("2022-01-30"), LocalDate.parse("2022-01-31")))
+          .build());
+
+      // Applied after the commit only
+      assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+              LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-31")))
+          .isEmpty();
+      TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-02-02")))
+        .containsExactly(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-29"), LocalDate.parse("2022-02-01"));
+  }
+
+  @Test
+  void apply_outOfOrder() {
+    final var date = LocalDate.parse("2022-01-31");
+    final var reservation = BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .reservedDate(date)
+        .build();
+    final var cancellation = BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .releasedDate(date)
+        .build();
+
+    // The cancellation committed after the reservation is applied first
+    availabilityIndex.apply(cancellation, 2);
+    availabilityIndex.apply(reservation, 1);
+
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID, date, date.plusDays(1))).containsExactly(date);
+
+    // The changes committed later are still applied, after a reload as well
+    availabilityIndex.load();
+    availabilityIndex.apply(reservation, 3);
+
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID, date, date.plusDays(1))).isEmpty();
+  }
+
+  @Test
+  void load_inventory() {
+    when(inventoryService.getCampsiteIds()).thenReturn(Set.of(3L));
+    when(inventoryService.isInventory(3)).thenReturn(true);
+    when(inventoryService.findSoldOutDates(3)).thenReturn(List.of(LocalDate.parse("2022-01-29")));
+
+    availabilityIndex.load();
+
+    assertThat(availabilityIndex.getAvailabilities(3, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31")))
+        .containsExactly(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-30"));
+  }
+
+  @Test
+  void refresh_inventory() {
+    when(inventoryService.isInventory(3)).thenReturn(true);
+    when(inventoryService.findSoldOutDates(3, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31")))
+        .thenReturn(List.of(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30")));
+    availabilityIndex.apply(BookingChangedEvent.builder()
+        .bookingId(2)
+        .campsiteId(3)
+        .reservedDate(LocalDate.parse("2022-01-29"))
+        .build(), 1);
+
+    final var change = availabilityIndex.refresh(3, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31"));
+
+    // The sold out days stay reserved, the inventory campsite has no booking dates
+    assertThat(change.getAvailable()).isEmpty();
+    assertThat(change.getReserved()).containsExactly(LocalDate.parse("2022-01-30"));
+    assertThat(availabilityIndex.getAvailabilities(3, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31")))
+        .containsExactly(LocalDate.parse("2022-01-28"));
+  }
+
+  @Test
+  void findCertainlyReservedDates() {
+    assertThat(availabilityIndex.findCertainlyReservedDates(DEFAULT_CAMPSITE_ID,
+            List.of(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"))))
+        .containsExactly(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"));
+    assertThat(availabilityIndex.findCertainlyReservedDates(2, List.of(LocalDate.parse("2022-01-29")))).isEmpty();
+  }
+
+  @Test
+  void findCertainlyReservedDates_releasing() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      availabilityIndex.markReleasing(DEFAULT_CAMPSITE_ID, List.of(LocalDate.parse("2022-01-29")));
+
+      // The release may be committed
+      assertThat(availabilityIndex.findCertainlyReservedDates(DEFAULT_CAMPSITE_ID,
+              List.of(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"))))
+          .containsExactly(LocalDate.parse("2022-01-30"));
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThat(availabilityIndex.findCertainlyReservedDates(DEFAULT_CAMPSITE_ID,
+            List.of(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"))))
+        .containsExactly(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"));
+  }
+
+  @Test
+  void onBookingChanged_otherCampsite() {
+    availabilityIndex.apply(BookingChangedEvent.builder()
+        .bookingId(2)
+        .campsiteId(2)
+        .reservedDates(List.of(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31")))
+        .build(), 1);
+
+    assertThat(availabilityIndex.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-02-02")))
+        .containsExactly(LocalDate.parse("2022-01-28"), LocalDate.parse("2022-01-31"), LocalDate.parse("2022-02-01"));
+    assertThat(availabilityIndex.getAvailabilities(2, LocalDate.parse("2022-01-28"), LocalDate.parse("2022-02-02")))
+        .containsExactly(LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-30"), LocalDate.parse("2022-02-01"));
+  }
+
+  @Test
+  void getFreeIntervals() {
+    assertThat(availabilityIndex.getFreeIntervals(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-28"), LocalDate.parse("2022-02-02")))
+        .containsExactly(
+            AvailabilityInterval.builder()
+                .start(LocalDate.parse("2022-01-28"))
+                .endExclusive(LocalDate.parse("2022-01-29"))
+                .build(),
+            AvailabilityInterval.builder()
+                .start(LocalDate.parse("2022-01-31"))
+                .endExclusive(LocalDate.parse("2022-02-02"))
+                .build());
+    assertThat(availabilityIndex.getFreeIntervals(DEFAULT_CAMPSITE_ID,
+            LocalDate.parse("2022-01-29"), LocalDate.parse("2022-01-31")))
+        .isEmpty();
+  }
+}
@@ -0,0 +1,149 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.config.BookingCacheMode;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test the {@link BookingCache}, in the {@link BookingCacheMode#LOCAL} mode of the test configuration.
+ * <p>A booking saved with the {@link BookingRepository} does not publish a {@code BookingChangedEvent}, like a change
+ * of another replica.</p>
+ * <p>This test class uses the h2 in-memory database.</p>
+ */
+@SpringBootTest
+class BookingCacheTest {
+
+  @Autowired
+  private BookingService bookingService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @Autowired
+  private BookingDateRepository bookingDateRepository;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private ApplicationConfiguration rsvpConfig;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+    bookingRepository.deleteAll();
+    bookingDateRepository.deleteAll();
+    availabilityIndex.load();
+  }
+
+  @Test
+  void findById_cached() {
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    final var hits = hits(meterRegistry);
+    bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    modifyByAnotherReplica(addedBookingDto.getId());
+
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).get()
+        .extracting(BookingDto::getFullName).isEqualTo(addedBookingDto.getFullName());
+    assertThat(hits(meterRegistry)).isEqualTo(hits + 1);
+  }
+
+  @Test
+  void findById_copy() {
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId()).orElseThrow().setFullName("Modified");
+
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).get()
+        .extracting(BookingDto::getFullName).isEqualTo(addedBookingDto.getFullName());
+  }
+
+  @Test
+  void update_evicts() {
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    final var cachedBookingDto = bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId()).orElseThrow();
+
+    final var updatedBookingDto = bookingService.update(cachedBookingDto, MockUtils.createAnotherBookingDto());
+
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).contains(updatedBookingDto);
+  }
+
+  @Test
+  void update_staleVersion_evicts() {
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    final var cachedBookingDto = bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId()).orElseThrow();
+    modifyByAnotherReplica(addedBookingDto.getId());
+
+    assertThatThrownBy(() -> bookingService.update(cachedBookingDto, MockUtils.createAnotherBookingDto()))
+        .isInstanceOf(OptimisticLockingFailureException.class);
+
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).get()
+        .extracting(BookingDto::getFullName).isEqualTo("Modified");
+  }
+
+  @Test
+  void deleteById_evicts() {
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    bookingService.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).isNotPresent();
+  }
+
+  @Test
+  void findById_validated() {
+    final var config = new ApplicationConfiguration();
+    config.setBookingCacheMode(BookingCacheMode.VALIDATED);
+    final var validatedMeterRegistry = new SimpleMeterRegistry();
+    final var bookingCache = new BookingCache(bookingRepository, config, validatedMeterRegistry);
+    final var addedBookingDto = bookingService.add(MockUtils.createBookingDto());
+    bookingCache.findById(addedBookingDto.getId());
+    bookingCache.findById(addedBookingDto.getId());
+    assertThat(hits(validatedMeterRegistry)).isEqualTo(1);
+
+    modifyByAnotherReplica(addedBookingDto.getId());
+
+    assertThat(bookingCache.findById(addedBookingDto.getId())).get()
+        .extracting(BookingDto::getFullName).isEqualTo("Modified");
+    bookingRepository.deleteById(addedBookingDto.getId());
+    assertThat(bookingCache.findById(addedBookingDto.getId())).isNotPresent();
+  }
+
+  @Test
+  void mode_changeLog() {
+    final var config = new ApplicationConfiguration();
+    config.setChangeLogEnabled(true);
+    assertThat(config.getBookingCacheMode()).isEqualTo(BookingCacheMode.VALIDATED);
+
+    config.setBookingCacheMode(BookingCacheMode.LOCAL);
+    assertThatThrownBy(() -> new BookingCache(bookingRepository, config, new SimpleMeterRegistry()))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private void modifyByAnotherReplica(long id) {
+    final var bookingDto = bookingRepository.findById(id).orElseThrow();
+    bookingDto.setFullName("Modified");
+    bookingRepository.save(bookingDto);
+  }
+
+  private static double hits(MeterRegistry meterRegistry) {
+    return meterRegistry.get("cache.gets").tag("cache", "bookings").tag("result", "hit").functionCounter().count();
+  }
+}
@@ -0,0 +1,90 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test the {@link BookingRetryPolicy}.
+ */
+class BookingRetryPolicyTest {
+
+  private final ApplicationConfiguration rsvpConfig = new ApplicationConfiguration();
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final BookingRetryPolicy retryPolicy = new BookingRetryPolicy(rsvpConfig, meterRegistry);
+
+  private final AtomicInteger attempts = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    rsvpConfig.setRetryMaxAttempts(3);
+    rsvpConfig.setRetryInitialBackoff(Duration.ofMillis(1));
+    rsvpConfig.setRetryMaxBackoff(Duration.ofMillis(5));
+    rsvpConfig.setRetryTimeBudget(Duration.ofSeconds(1));
+  }
+
+  @Test
+  void execute_transientFailure() {
+    final var result = retryPolicy.execute("add", () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new CannotAcquireLockException("lock timeout");
+      }
+      return "added";
+    });
+
+    assertThat(result).isEqualTo("added");
+    assertThat(attempts).hasValue(3);
+    assertThat(meterRegistry.counter("campsite.booking.retries", "operation", "add").count()).isEqualTo(2);
+  }
+
+  @Test
+  void execute_exhausted() {
+    assertThatThrownBy(() -> retryPolicy.execute("add", () -> {
+      attempts.incrementAndGet();
+      throw new CannotAcquireLockException("lock timeout");
+    })).isInstanceOf(CannotAcquireLockException.class);
+
+    assertThat(attempts).hasValue(3);
+    assertThat(meterRegistry.counter("campsite.booking.retries.exhausted", "operation", "add").count()).isEqualTo(1);
+  }
+
+  @Test
+  void execute_timeBudgetExhausted() {
+    rsvpConfig.setRetryMaxAttempts(100);
+    rsvpConfig.setRetryTimeBudget(Duration.ZERO);
+
+    assertThatThrownBy(() -> retryPolicy.execute("add", () -> {
+      attempts.incrementAndGet();
+      throw new CannotAcquireLockException("lock timeout");
+    })).isInstanceOf(CannotAcquireLockException.class);
+
+    assertThat(attempts).hasValue(1);
+  }
+
+  @Test
+  void execute_conflict() {
+    assertThatThrownBy(() -> retryPolicy.execute("add", () -> {
+      attempts.incrementAndGet();
+      throw new DataIntegrityViolationException("duplicate key");
+    })).isInstanceOf(DataIntegrityViolationException.class);
+    assertThatThrownBy(() -> retryPolicy.execute("update", () -> {
+      attempts.incrementAndGet();
+      throw new ObjectOptimisticLockingFailureException("Booking", 1L);
+    })).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+    assertThat(attempts).hasValue(2);
+    assertThat(meterRegistry.find("campsite.booking.retries").counter()).isNull();
+  }
+}
@@ -1,22 +1,36 @@
 package com.upgrade.volcanocampsitereservation.service;
 
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.config.ConcurrencyStrategy;
+import com.upgrade.volcanocampsitereservation.domain.BatchBookingResult;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
 import com.upgrade.volcanocampsitereservation.mock.MockUtils;
 import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
 import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.dao.NonTransientDataAccessException;
 import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpStatus;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -43,10 +57,22 @@ class BookingServiceConcurrencyTest {
   @Autowired
   private BookingDateRepository bookingDateRepository;
 
+  @Autowired
+  private ApplicationConfiguration rsvpConfig;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
   @BeforeEach
   void setUp() {
     bookingRepository.deleteAll();
     bookingDateRepository.deleteAll();
+    availabilityIndex.load();
+  }
+
+  @AfterEach
+  void tearDown() {
+    rsvpConfig.setConcurrencyStrategy(ConcurrencyStrategy.SERIALIZABLE);
   }
 
   /**
@@ -118,8 +144,10 @@ class BookingServiceConcurrencyTest {
 
     executor.shutdown();
     assertThat(executor.awaitTermination(DELAY * 4, TimeUnit.MILLISECONDS)).isTrue();
-    assertThat(bookingRepository.findAll()).hasSize(1);
-    var expectedBookingDates = bookingDto.bookingDates();
+    final var addedBookingDtos = bookingRepository.findAll();
+    assertThat(addedBookingDtos).hasSize(1);
+    // The dates are owned by the added booking
+    var expectedBookingDates = addedBookingDtos.get(0).bookingDates();
     assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(expectedBookingDates);
   }
 
@@ -156,6 +184,162 @@ class BookingServiceConcurrencyTest {
     assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(bookingDto1.bookingDates());
   }
 
+  /**
+   * Test the creation of 2 entities (with overlapping date) in parallel with the striped locks. The second one should
+   * wait for the first one, and fail.
+   */
+  @Test
+  void addWithConcurrency_conflict_stripedLock() throws Exception {
+    rsvpConfig.setConcurrencyStrategy(ConcurrencyStrategy.STRIPED_LOCK);
+    final var bookingDto1 = MockUtils.createBookingDto();
+    final var bookingDto2 = createOverlappedBookingDto(bookingDto1);
+    insertDelayInsideLockingSection();
+    final var executor = Executors.newFixedThreadPool(2);
+
+    final var future1 = executor.submit(() -> bookingService.add(bookingDto1));
+    TimeUnit.MILLISECONDS.sleep(DELAY / 2);
+    final var future2 = executor.submit(() -> bookingService.add(bookingDto2));
+
+    executor.shutdown();
+    assertThat(executor.awaitTermination(DELAY * 4, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(future1.get()).isEqualTo(bookingDto1);
+    assertThatThrownBy(future2::get).hasCauseInstanceOf(BookingConflictException.class);
+    assertThat(bookingRepository.findAll()).containsExactly(bookingDto1);
+    assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(bookingDto1.bookingDates());
+  }
+
+  /**
+   * Test the creation of 2 entities (with overlapping date) in parallel without check before the insert. The primary
+   * key violation of the second one should be reported as a conflict naming the dates.
+   */
+  @Test
+  void addWithConcurrency_conflict_insertFirst() throws Exception {
+    rsvpConfig.setConcurrencyStrategy(ConcurrencyStrategy.INSERT_FIRST);
+    final var bookingDto1 = MockUtils.createBookingDto();
+    final var bookingDto2 = createOverlappedBookingDto(bookingDto1);
+    insertDelayInsideLockingSection();
+    final var executor = Executors.newFixedThreadPool(2);
+
+    final var future1 = executor.submit(() -> bookingService.add(bookingDto1));
+    TimeUnit.MILLISECONDS.sleep(DELAY / 2);
+    final var future2 = executor.submit(() -> bookingService.add(bookingDto2));
+
+    executor.shutdown();
+    assertThat(executor.awaitTermination(DELAY * 4, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(future1.get()).isEqualTo(bookingDto1);
+    assertThatThrownBy(future2::get)
+        .hasCauseInstanceOf(BookingConflictException.class)
+        .hasMessageContaining("Dates " + Utils.getDatesBetween(bookingDto1.getArrivalDate(),
+            bookingDto1.getDepartureDate()) + " are not available");
+    assertThat(bookingRepository.findAll()).containsExactly(bookingDto1);
+    assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(bookingDto1.bookingDates());
+  }
+
+  /**
+   * Measure the throughput of the creation of entities under contention (groups of identical bookings), with each
+   * concurrency strategy. Only 1 booking per group should be successful.
+   */
+  @ParameterizedTest
+  @EnumSource(ConcurrencyStrategy.class)
+  void addWithConcurrency_contention(ConcurrencyStrategy concurrencyStrategy) throws Exception {
+    rsvpConfig.setConcurrencyStrategy(concurrencyStrategy);
+    final var groups = 5;
+    final var num = 20;
+    final var executor = Executors.newFixedThreadPool(num);
+    final var futures = new ArrayList<Future<BookingDto>>();
+
+    final var start = System.nanoTime();
+    for (int i = 0; i < num; i++) {
+      final var bookingDto = MockUtils.createBookingDto(LocalDate.now().plusDays(2 + 3L * (i % groups)), 2);
+      futures.add(executor.submit(() -> bookingService.add(bookingDto)));
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(DELAY * num * 4L, TimeUnit.MILLISECONDS)).isTrue();
+    final var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    var conflicts = 0;
+    for (var future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        conflicts += e.getCause() instanceof BookingConflictException ? 1 : 0;
+      }
+    }
+    log.info("{}: {} attempts in {} ms ({} attempts/s, {} conflicts)",
+        concurrencyStrategy, num, elapsedMillis, num * 1000 / Math.max(1, elapsedMillis), conflicts);
+    assertThat(bookingRepository.findAll()).hasSizeBetween(1, groups);
+    assertThat(bookingDateRepository.findAll()).hasSize(2 * bookingRepository.findAll().size());
+    if (concurrencyStrategy != ConcurrencyStrategy.SERIALIZABLE) {
+      // Every failure is a conflict with the winner of the group
+      assertThat(bookingRepository.findAll()).hasSize(groups);
+      assertThat(conflicts).isEqualTo(num - groups);
+    }
+  }
+
+  /**
+   * Measure the throughput of the creation of entities without overlapping dates, with each concurrency strategy.
+   * With the striped locks, the transactions should be executed in parallel.
+   */
+  @ParameterizedTest
+  @EnumSource(ConcurrencyStrategy.class)
+  void addWithConcurrency_throughput(ConcurrencyStrategy concurrencyStrategy) throws Exception {
+    rsvpConfig.setConcurrencyStrategy(concurrencyStrategy);
+    final var num = 10;
+    insertDelayInsideLockingSection();
+    final var executor = Executors.newFixedThreadPool(num);
+    final var futures = new ArrayList<Future<BookingDto>>();
+
+    final var start = System.nanoTime();
+    for (int i = 0; i < num; i++) {
+      final var bookingDto = MockUtils.createBookingDto(LocalDate.now().plusDays(2 + i), 1);
+      futures.add(executor.submit(() -> bookingService.add(bookingDto)));
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(DELAY * num * 4L, TimeUnit.MILLISECONDS)).isTrue();
+    final var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    log.info("{}: {} bookings in {} ms ({} bookings/s)",
+        concurrencyStrategy, num, elapsedMillis, num * 1000 / Math.max(1, elapsedMillis));
+    for (var future : futures) {
+      assertThat(future.get()).isNotNull();
+    }
+    assertThat(bookingRepository.findAll()).hasSize(num);
+    if (concurrencyStrategy == ConcurrencyStrategy.STRIPED_LOCK) {
+      // The artificial delays are not serialized
+      assertThat(elapsedMillis).isLessThan(DELAY * num);
+    }
+  }
+
+  /**
+   * Test a batch whose dates are reserved by a concurrent booking after the scan of the batch. The other bookings of
+   * the batch should be added.
+   */
+  @Test
+  void addAllWithConcurrency_conflict() throws Exception {
+    // The batch reads the reserved dates without lock
+    rsvpConfig.setConcurrencyStrategy(ConcurrencyStrategy.INSERT_FIRST);
+    final var bookingDto1 = MockUtils.createBookingDto();
+    final var bookingDto2 = MockUtils.createAnotherBookingDto();
+    final var concurrentBookingDto = MockUtils.createBookingDto();
+    final var executor = Executors.newSingleThreadExecutor();
+    final var concurrentlyAdded = new AtomicBoolean();
+    // The concurrent booking is committed after the scan of the first attempt
+    doAnswer(invocation -> {
+      if (concurrentlyAdded.compareAndSet(false, true)) {
+        executor.submit(() -> bookingService.add(concurrentBookingDto)).get();
+      }
+      return null;
+    }).when(bookingService).testArtificialDelay();
+
+    final var results = bookingService.addAll(BookingDto.DEFAULT_CAMPSITE_ID, List.of(bookingDto1, bookingDto2));
+
+    executor.shutdown();
+    assertThat(results).extracting(BatchBookingResult::getStatus).containsExactly(HttpStatus.CONFLICT, HttpStatus.OK);
+    assertThat(results.get(0).getMessage()).isEqualTo("Dates "
+        + Utils.getDatesBetween(bookingDto1.getArrivalDate(), bookingDto1.getDepartureDate()) + " are not available");
+    assertThat(bookingRepository.findAll()).containsExactlyInAnyOrder(concurrentBookingDto, bookingDto2);
+  }
+
   private void insertDelayInsideLockingSection() {
     doAnswer(invocation -> {
       try {
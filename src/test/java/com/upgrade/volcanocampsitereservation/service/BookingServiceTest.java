@@ -1,7 +1,14 @@
 package com.upgrade.volcanocampsitereservation.service;
 
+import com.upgrade.volcanocampsitereservation.domain.BatchBookingResult;
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.BookingCursor;
+import com.upgrade.volcanocampsitereservation.domain.BookingFilter;
+import com.upgrade.volcanocampsitereservation.dto.BookingDateDto;
 import com.upgrade.volcanocampsitereservation.mock.MockUtils;
 import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.event.BookingChangedEvent;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
 import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
 import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
 import com.upgrade.volcanocampsitereservation.utils.Utils;
@@ -9,11 +16,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.Ordered;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -34,10 +54,24 @@ class BookingServiceTest {
   @Autowired
   private BookingDateRepository bookingDateRepository;
 
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private BookingDateHealthIndicator bookingDateHealthIndicator;
+
+  private TransactionTemplate transaction;
+
+  @Autowired
+  void setTransactionManager(PlatformTransactionManager transactionManager) {
+    this.transaction = new TransactionTemplate(transactionManager);
+  }
+
   @BeforeEach
   void setUp() {
     bookingRepository.deleteAll();
     bookingDateRepository.deleteAll();
+    availabilityIndex.load();
   }
 
   private BookingDto createAndAddBookingDto() {
@@ -62,6 +96,28 @@ class BookingServiceTest {
     assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(bookingDto.bookingDates());
   }
 
+  @Test
+  void addAll() {
+    final var reservedBookingDto = createAndAddBookingDto();
+    final var bookingDto1 = MockUtils.createAnotherBookingDto();
+    final var bookingDto2 = MockUtils.createBookingDto(bookingDto1.getDepartureDate().minusDays(1), 1);
+    final var bookingDto3 = MockUtils.createBookingDto(reservedBookingDto.getDepartureDate().minusDays(1), 1);
+    final var bookingDto4 = MockUtils.createBookingDto(bookingDto1.getDepartureDate(), 2);
+
+    final var results = bookingService.addAll(DEFAULT_CAMPSITE_ID,
+            List.of(bookingDto1, bookingDto2, bookingDto3, bookingDto4));
+
+    assertThat(results).extracting(BatchBookingResult::getStatus)
+        .containsExactly(HttpStatus.OK, HttpStatus.CONFLICT, HttpStatus.CONFLICT, HttpStatus.OK);
+    assertThat(results.get(1).getMessage()).contains("reserved by a previous booking of the batch");
+    assertThat(results.get(2).getMessage())
+        .isEqualTo("Dates [" + reservedBookingDto.getDepartureDate().minusDays(1) + "] are not available");
+    assertThat(bookingRepository.findAll()).hasSize(3);
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto1.getArrivalDate(), bookingDto4.getDepartureDate()))
+        .isEmpty();
+  }
+
   @Test
   void update() {
     final var oldBookingDto = MockUtils.createBookingDto();
@@ -75,23 +131,136 @@ class BookingServiceTest {
     assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(newBookingDto.bookingDates());
   }
 
+  @Test
+  void update_shiftedStay() {
+    final var oldBookingDto = createAndAddBookingDto();
+    final var newBookingDto = MockUtils.createBookingDto(oldBookingDto.getArrivalDate().plusDays(1), 2);
+
+    final var updatedBookingDto = bookingService.update(oldBookingDto, newBookingDto);
+
+    assertThat(updatedBookingDto.getVersion()).isEqualTo(oldBookingDto.getVersion() + 1);
+    assertThat(bookingDateRepository.findAll()).containsExactlyInAnyOrderElementsOf(newBookingDto.bookingDates());
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            oldBookingDto.getArrivalDate(), newBookingDto.getDepartureDate()))
+        .containsExactly(oldBookingDto.getArrivalDate());
+  }
+
+  @Test
+  void add_otherCampsite() {
+    final var bookingDto = createAndAddBookingDto();
+    final var otherBookingDto = MockUtils.createBookingDto();
+    otherBookingDto.setCampsiteId(2);
+
+    // The same dates are available at the other campsite
+    final var addedBookingDto = bookingService.add(otherBookingDto);
+
+    assertThat(findAll(2)).containsExactly(Booking.createFrom(addedBookingDto));
+    assertThat(findAll(DEFAULT_CAMPSITE_ID)).containsExactly(Booking.createFrom(bookingDto));
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId())).isNotPresent();
+    assertThatThrownBy(() -> bookingService.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId()))
+        .isInstanceOf(EmptyResultDataAccessException.class);
+
+    bookingService.deleteById(2, addedBookingDto.getId());
+
+    assertThat(bookingService.getAvailabilities(2, bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .hasSize(2);
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .isEmpty();
+  }
+
+  @Test
+  void add_knownConflict() {
+    final var addedBookingDto = createAndAddBookingDto();
+    final var dates = Utils.getDatesBetween(addedBookingDto.getArrivalDate(), addedBookingDto.getDepartureDate());
+
+    assertThatThrownBy(this::createAndAddBookingDto)
+        .isInstanceOf(BookingConflictException.class)
+        .hasMessage("Dates " + dates + " are not available");
+    assertThat(bookingRepository.count()).isEqualTo(1);
+  }
+
+  @Test
+  void add_reservedInIndexOnly() {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var dates = Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+    // Reserved in the index only: the database accepts the booking
+    transaction.executeWithoutResult(status -> availabilityIndex.onBookingChanged(BookingChangedEvent.builder()
+        .bookingId(1)
+        .campsiteId(DEFAULT_CAMPSITE_ID)
+        .reservedDates(dates)
+        .build()));
+
+    bookingService.add(bookingDto);
+
+    assertThat(bookingRepository.count()).isEqualTo(1);
+    assertThat(availabilityIndex.findCertainlyReservedDates(DEFAULT_CAMPSITE_ID, dates)).isEqualTo(dates);
+  }
+
+  @Test
+  void add_cancelledBeforeTheIndexIsUpdated() {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var dates = Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+    final var executor = Executors.newSingleThreadExecutor();
+    try {
+      bookingService.add(bookingDto, addedBookingDto ->
+          // Registered before the synchronization of the AvailabilityIndex, with the same order
+          TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+              return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+              // The cancellation is committed and applied before the listener of the add
+              try {
+                executor.submit(() -> bookingService.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId()))
+                    .get(10, TimeUnit.SECONDS);
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            }
+          }));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(bookingRepository.count()).isZero();
+    // The late listener of the add did not reserve the cancelled dates again
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, dates.get(0),
+            dates.get(dates.size() - 1).plusDays(1)))
+        .containsExactlyElementsOf(dates);
+    assertThat(createAndAddBookingDto().getArrivalDate()).isEqualTo(bookingDto.getArrivalDate());
+  }
+
+  @Test
+  void add_afterDelete() {
+    final var addedBookingDto = createAndAddBookingDto();
+    assertThatThrownBy(this::createAndAddBookingDto).isInstanceOf(BookingConflictException.class);
+
+    bookingService.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    assertThat(createAndAddBookingDto().getId()).isNotEqualTo(addedBookingDto.getId());
+  }
+
   @Test
   void findById_absent() {
-    assertThat(bookingService.findById(0)).isNotPresent();
+    assertThat(bookingService.findById(DEFAULT_CAMPSITE_ID, 0)).isNotPresent();
   }
 
   @Test
   void findById_success() {
     final var bookingDto = createAndAddBookingDto();
 
-    final var optionalBookingDto = bookingService.findById(bookingDto.getId());
+    final var optionalBookingDto = bookingService.findById(DEFAULT_CAMPSITE_ID, bookingDto.getId());
 
     assertThat(optionalBookingDto).get().isEqualTo(bookingDto);
   }
 
   @Test
   void deleteById_failure() {
-    assertThatThrownBy(() -> bookingService.deleteById(0))
+    assertThatThrownBy(() -> bookingService.deleteById(DEFAULT_CAMPSITE_ID, 0))
         .isInstanceOf(EmptyResultDataAccessException.class);
   }
 
@@ -99,23 +268,92 @@ class BookingServiceTest {
   void deleteById_success() {
     final var bookingDto = createAndAddBookingDto();
 
-    bookingService.deleteById(bookingDto.getId());
+    bookingService.deleteById(DEFAULT_CAMPSITE_ID, bookingDto.getId());
+
+    assertThat(bookingRepository.findAll()).isEmpty();
+    assertThat(bookingDateRepository.findAll()).isEmpty();
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .hasSize(2);
+  }
+
+  @Test
+  void findOrphanDates() {
+    final var bookingDto = createAndAddBookingDto();
+    final var orphanDate = BookingDateDto.builder()
+        .campsiteId(bookingDto.getCampsiteId())
+        .date(bookingDto.getDepartureDate())
+        .bookingId(bookingDto.getId() + 1)
+        .build();
+    assertThat(bookingService.findOrphanDates()).isEmpty();
+
+    bookingDateRepository.save(orphanDate);
+
+    assertThat(bookingService.findOrphanDates()).containsExactly(orphanDate);
+  }
+
+  @Test
+  void orphanDatesHealth() {
+    final var bookingDto = createAndAddBookingDto();
+    bookingDateRepository.save(BookingDateDto.builder()
+        .campsiteId(bookingDto.getCampsiteId())
+        .date(bookingDto.getDepartureDate())
+        .bookingId(bookingDto.getId() + 1)
+        .build());
+    bookingDateHealthIndicator.check();
+    assertThat(bookingDateHealthIndicator.health().getStatus()).isEqualTo(BookingDateHealthIndicator.ORPHAN_DATES);
+
+    // The health check reports the last search
+    bookingDateRepository.deleteAll();
+    assertThat(bookingDateHealthIndicator.health().getStatus()).isEqualTo(BookingDateHealthIndicator.ORPHAN_DATES);
+
+    bookingDateHealthIndicator.check();
+    assertThat(bookingDateHealthIndicator.health().getStatus()).isEqualTo(Status.UP);
+  }
+
+  /**
+   * Measure the latency of the cancellation, compared with the deletion of the entities one by one.
+   */
+  @Test
+  void deleteById_latency() {
+    final var num = 50;
+    final var perEntityNanos = measureDeletion(num, id -> transaction.executeWithoutResult(status -> {
+      final var bookingDates = bookingRepository.findById(id)
+          .map(BookingDto::bookingDates)
+          .orElse(List.of());
+      bookingDateRepository.deleteAll(bookingDates);
+      bookingRepository.deleteById(id);
+    }));
+    final var bulkNanos = measureDeletion(num, id -> bookingService.deleteById(DEFAULT_CAMPSITE_ID, id));
+
+    log.info("Cancellation latency: {} us per entity, {} us with bulk deletes",
+        TimeUnit.NANOSECONDS.toMicros(perEntityNanos / num), TimeUnit.NANOSECONDS.toMicros(bulkNanos / num));
+  }
 
+  private long measureDeletion(int num, LongConsumer deletion) {
+    final var ids = new ArrayList<Long>();
+    for (int i = 0; i < num; i++) {
+      ids.add(bookingService.add(MockUtils.createBookingDto(LocalDate.now().plusDays(2 + 3L * i), 3)).getId());
+    }
+    final var start = System.nanoTime();
+    ids.forEach(deletion::accept);
+    final var elapsedNanos = System.nanoTime() - start;
     assertThat(bookingRepository.findAll()).isEmpty();
     assertThat(bookingDateRepository.findAll()).isEmpty();
+    return elapsedNanos;
   }
 
   @Test
   void findAll_empty() {
-    assertThat(bookingService.findAll()).isEmpty();
+    assertThat(findAll(DEFAULT_CAMPSITE_ID)).isEmpty();
   }
 
   @Test
   void findAll_1() {
     final var bookingDto = createAndAddBookingDto();
 
-    final var bookingDtoList = bookingService.findAll();
-    assertThat(bookingDtoList).containsExactly(bookingDto);
+    final var bookingList = findAll(DEFAULT_CAMPSITE_ID);
+    assertThat(bookingList).containsExactly(Booking.createFrom(bookingDto));
   }
 
   @Test
@@ -123,9 +361,55 @@ class BookingServiceTest {
     final var bookingDto1 = createAndAddBookingDto();
     final var bookingDto2 = createAndAddAnotherBookingDto();
 
-    final var bookingDtoList = bookingService.findAll();
+    final var bookingList = findAll(DEFAULT_CAMPSITE_ID);
+
+    assertThat(bookingList).containsExactly(Booking.createFrom(bookingDto1), Booking.createFrom(bookingDto2));
+  }
+
+  @Test
+  void findAll_pages() {
+    final var bookingDto1 = createAndAddBookingDto();
+    final var bookingDto2 = createAndAddAnotherBookingDto();
+    final var bookingDto3 = bookingService.add(MockUtils.createBookingDto(bookingDto2.getDepartureDate(), 1));
+
+    final var page1 = bookingService.findAll(DEFAULT_CAMPSITE_ID, BookingFilter.NONE, null, 2);
+    assertThat(page1.getContent()).containsExactly(Booking.createFrom(bookingDto1), Booking.createFrom(bookingDto2));
+    assertThat(page1.hasNext()).isTrue();
+
+    final var page2 = bookingService.findAll(DEFAULT_CAMPSITE_ID, BookingFilter.NONE,
+        new BookingCursor(bookingDto2.getArrivalDate(), bookingDto2.getId()), 2);
+    assertThat(page2.getContent()).containsExactly(Booking.createFrom(bookingDto3));
+    assertThat(page2.hasNext()).isFalse();
+  }
+
+  @Test
+  void exportAll() {
+    final var bookingDto2 = createAndAddAnotherBookingDto();
+    final var bookingDto1 = createAndAddBookingDto();
+    final var otherBookingDto = MockUtils.createBookingDto();
+    otherBookingDto.setCampsiteId(2);
+    bookingService.add(otherBookingDto);
+
+    final var exportedBookings = new ArrayList<Booking>();
+    bookingService.exportAll(DEFAULT_CAMPSITE_ID, exportedBookings::add);
+
+    assertThat(exportedBookings).containsExactly(Booking.createFrom(bookingDto1), Booking.createFrom(bookingDto2));
+  }
+
+  @Test
+  void findAll_filter() {
+    final var bookingDto1 = createAndAddBookingDto();
+    final var bookingDto2 = createAndAddAnotherBookingDto();
 
-    assertThat(bookingDtoList).containsExactly(bookingDto1, bookingDto2);
+    assertThat(bookingService.findAll(DEFAULT_CAMPSITE_ID, BookingFilter.builder()
+        .arrivalFrom(bookingDto1.getArrivalDate().plusDays(1))
+        .build(), null, 10)).containsExactly(Booking.createFrom(bookingDto2));
+    assertThat(bookingService.findAll(DEFAULT_CAMPSITE_ID, BookingFilter.builder()
+        .departureTo(bookingDto1.getDepartureDate().plusDays(1))
+        .build(), null, 10)).containsExactly(Booking.createFrom(bookingDto1));
+    assertThat(bookingService.findAll(DEFAULT_CAMPSITE_ID, BookingFilter.builder()
+        .arrivalTo(bookingDto1.getArrivalDate())
+        .build(), null, 10)).isEmpty();
   }
 
   @Test
@@ -133,7 +417,7 @@ class BookingServiceTest {
     final var startInclusive = LocalDate.now();
     final var endExclusive = startInclusive.plusDays(10);
 
-    final var availabilities = bookingService.getAvailabilities(startInclusive, endExclusive);
+    final var availabilities = bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive);
 
     final var expectedAvailabilities = Utils.getDatesBetween(startInclusive, endExclusive);
     assertThat(availabilities).containsExactlyElementsOf(expectedAvailabilities);
@@ -146,7 +430,7 @@ class BookingServiceTest {
     final var startInclusive = bookingDto.getArrivalDate().minusDays(5);
     final var endExclusive = bookingDto.getDepartureDate().plusDays(5);
 
-    final var availabilities = bookingService.getAvailabilities(startInclusive, endExclusive);
+    final var availabilities = bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive);
 
     final var expectedAvailabilities = Utils.getDatesBetween(startInclusive, bookingDto.getArrivalDate());
     expectedAvailabilities.addAll(Utils.getDatesBetween(bookingDto.getDepartureDate(), endExclusive));
@@ -161,11 +445,41 @@ class BookingServiceTest {
     final var startInclusive = bookingDto1.getArrivalDate();
     final var endExclusive = bookingDto2.getDepartureDate();
 
-    final var availabilities = bookingService.getAvailabilities(startInclusive, endExclusive);
+    final var availabilities = bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive);
 
     final var expectedAvailabilities = Utils.getDatesBetween(
         bookingDto1.getDepartureDate(),
         bookingDto2.getArrivalDate());
     assertThat(availabilities).containsExactlyElementsOf(expectedAvailabilities);
   }
-}
\ No newline at end of file
+
+  @Test
+  void getAvailabilities_afterDelete() {
+    final var bookingDto = createAndAddBookingDto();
+    final var startInclusive = bookingDto.getArrivalDate();
+    final var endExclusive = bookingDto.getDepartureDate();
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive)).isEmpty();
+
+    bookingService.deleteById(DEFAULT_CAMPSITE_ID, bookingDto.getId());
+
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive))
+        .containsExactlyElementsOf(Utils.getDatesBetween(startInclusive, endExclusive));
+  }
+
+  @Test
+  void getAvailabilities_afterUpdate() {
+    final var bookingDto = createAndAddBookingDto();
+    final var newBookingDto = MockUtils.createAnotherBookingDto();
+    final var startInclusive = bookingDto.getArrivalDate();
+    final var endExclusive = newBookingDto.getDepartureDate();
+
+    bookingService.update(bookingDto, newBookingDto);
+
+    final var availabilities = bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID, startInclusive, endExclusive);
+    assertThat(availabilities).containsExactlyElementsOf(Utils.getDatesBetween(startInclusive, newBookingDto.getArrivalDate()));
+  }
+
+  private List<Booking> findAll(long campsiteId) {
+    return bookingService.findAll(campsiteId, BookingFilter.NONE, null, 100).getContent();
+  }
+}
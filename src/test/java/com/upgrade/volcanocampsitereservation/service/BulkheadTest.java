@@ -0,0 +1,102 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test the {@link Bulkhead}.
+ */
+class BulkheadTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void acquire_queued() throws Exception {
+    final var bulkhead = new Bulkhead("write", 1, 1, Duration.ofSeconds(5), meterRegistry);
+    bulkhead.acquire();
+
+    final var queuedRequest = executor.submit(bulkhead::acquire);
+    waitUntilQueued(bulkhead, 1);
+    assertThat(meterRegistry.get("campsite.admission.queue").tag("bulkhead", "write").gauge().value()).isEqualTo(1);
+    bulkhead.release();
+
+    queuedRequest.get(5, TimeUnit.SECONDS);
+    assertThat(bulkhead.getInFlight()).isEqualTo(1);
+    assertThat(bulkhead.getQueued()).isZero();
+  }
+
+  @Test
+  void acquire_queueFull() throws Exception {
+    final var bulkhead = new Bulkhead("write", 1, 1, Duration.ofSeconds(5), meterRegistry);
+    bulkhead.acquire();
+    executor.submit(bulkhead::acquire);
+    waitUntilQueued(bulkhead, 1);
+
+    assertThatThrownBy(bulkhead::acquire)
+        .isInstanceOf(ServiceUnavailableException.class)
+        .hasMessage("Too many write requests, please retry later");
+    assertThat(meterRegistry.get("campsite.admission.shed").tags("bulkhead", "write", "reason", "queue-full")
+        .counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void acquire_noBarging() throws Exception {
+    final var bulkhead = new Bulkhead("write", 1, 1, Duration.ofMillis(200), meterRegistry);
+    bulkhead.acquire();
+    final var queuedRequest = executor.submit(bulkhead::acquire);
+    waitUntilQueued(bulkhead, 1);
+
+    bulkhead.release();
+
+    // The released permit goes to the queued request: the new request is rejected (queue full or timeout)
+    assertThatThrownBy(bulkhead::acquire).isInstanceOf(ServiceUnavailableException.class);
+    queuedRequest.get(5, TimeUnit.SECONDS);
+    assertThat(bulkhead.getInFlight()).isEqualTo(1);
+  }
+
+  @Test
+  void acquire_queueTimeout() {
+    final var bulkhead = new Bulkhead("write", 1, 10, Duration.ofMillis(50), meterRegistry);
+    bulkhead.acquire();
+
+    assertThatThrownBy(bulkhead::acquire).isInstanceOf(ServiceUnavailableException.class);
+    assertThat(bulkhead.getQueued()).isZero();
+    assertThat(meterRegistry.get("campsite.admission.shed").tags("bulkhead", "write", "reason", "queue-timeout")
+        .counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void acquire_separateBulkheads() {
+    final var writeBulkhead = new Bulkhead("write", 1, 0, Duration.ZERO, meterRegistry);
+    final var readBulkhead = new Bulkhead("read", 1, 0, Duration.ZERO, meterRegistry);
+    writeBulkhead.acquire();
+
+    assertThatThrownBy(writeBulkhead::acquire).isInstanceOf(ServiceUnavailableException.class);
+    readBulkhead.acquire();
+    assertThat(readBulkhead.getInFlight()).isEqualTo(1);
+  }
+
+  private static void waitUntilQueued(Bulkhead bulkhead, int queued) throws InterruptedException {
+    for (int i = 0; i < 100 && bulkhead.getQueued() < queued; i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertThat(bulkhead.getQueued()).isEqualTo(queued);
+  }
+}
@@ -0,0 +1,166 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.VolcanoCampsiteReservationApplication;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test the {@link ChangeLogService}.
+ * <p>2 application contexts (replicas) share 1 h2 file database.</p>
+ */
+class ChangeLogServiceTest {
+
+  private static final String DATABASE_URL = "jdbc:h2:file:./build/h2/change-log-test";
+
+  private static ConfigurableApplicationContext replica1;
+
+  private static ConfigurableApplicationContext replica2;
+
+  @BeforeAll
+  static void startReplicas() {
+    // The first replica creates the schema
+    replica1 = startReplica("create");
+    replica2 = startReplica("none");
+  }
+
+  @AfterAll
+  static void stopReplicas() {
+    replica2.close();
+    replica1.close();
+  }
+
+  private static ConfigurableApplicationContext startReplica(String ddlAuto) {
+    return new SpringApplicationBuilder(VolcanoCampsiteReservationApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties(
+            "spring.datasource.url=" + DATABASE_URL,
+            "spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+            "campsite.change-log-enabled=true",
+            "campsite.change-log-poll-interval=PT0.05S",
+            "campsite.change-log-gap-timeout=PT0.2S",
+            // The transactions of different dates are not serialized by h2
+            "campsite.concurrency-strategy=insert-first")
+        .run();
+  }
+
+  @Test
+  void changesAreVisibleOnTheOtherReplica() throws Exception {
+    final var bookingService1 = replica1.getBean(BookingService.class);
+    final var bookingService2 = replica2.getBean(BookingService.class);
+    final var stateVersion2 = replica2.getBean(ReservationStateVersion.class);
+    final var bookingDto = MockUtils.createBookingDto();
+    final var arrivalDate = bookingDto.getArrivalDate();
+    final var departureDate = bookingDto.getDepartureDate();
+    final var bookingDates = Utils.getDatesBetween(arrivalDate, departureDate);
+    final var initialVersion2 = stateVersion2.current(DEFAULT_CAMPSITE_ID);
+
+    final var addedBookingDto = bookingService1.add(bookingDto);
+
+    // Read your writes on the replica 1, bounded lag on the replica 2
+    assertThat(bookingService1.getAvailabilities(DEFAULT_CAMPSITE_ID, arrivalDate, departureDate)).isEmpty();
+    waitUntil(() -> bookingService2.getAvailabilities(DEFAULT_CAMPSITE_ID, arrivalDate, departureDate).isEmpty());
+    assertThat(stateVersion2.current(DEFAULT_CAMPSITE_ID)).isNotEqualTo(initialVersion2);
+
+    bookingService2.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    assertThat(bookingService2.getAvailabilities(DEFAULT_CAMPSITE_ID, arrivalDate, departureDate))
+        .containsExactlyElementsOf(bookingDates);
+    waitUntil(() -> bookingService1.getAvailabilities(DEFAULT_CAMPSITE_ID, arrivalDate, departureDate).size()
+        == bookingDates.size());
+  }
+
+  @Test
+  void changeWithoutDatesIsVisibleOnTheOtherReplica() throws Exception {
+    final var bookingService1 = replica1.getBean(BookingService.class);
+    final var emailLookupService2 = replica2.getBean(EmailLookupService.class);
+    final var stateVersion2 = replica2.getBean(ReservationStateVersion.class);
+    final var addedBookingDto = bookingService1.add(MockUtils.createBookingDto());
+    try {
+      waitUntil(() -> emailLookupService2.findAllByEmail(DEFAULT_CAMPSITE_ID, addedBookingDto.getEmail()).size() == 1);
+      final var version2 = stateVersion2.current(DEFAULT_CAMPSITE_ID);
+
+      // Same dates, new email
+      final var newBookingDto = MockUtils.createBookingDto();
+      newBookingDto.setEmail("other@email.com");
+      bookingService1.update(addedBookingDto, newBookingDto);
+
+      waitUntil(() -> !stateVersion2.current(DEFAULT_CAMPSITE_ID).equals(version2));
+      assertThat(emailLookupService2.findAllByEmail(DEFAULT_CAMPSITE_ID, addedBookingDto.getEmail())).isEmpty();
+    } finally {
+      bookingService1.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+    }
+  }
+
+  @Test
+  void changeCommittedAfterTheGapTimeout() throws Exception {
+    final var bookingService1 = replica1.getBean(BookingService.class);
+    final var bookingService2 = replica2.getBean(BookingService.class);
+    final var transaction1 = new TransactionTemplate(replica1.getBean(PlatformTransactionManager.class));
+    final var slowBookingDto = MockUtils.createBookingDto();
+    final var otherBookingDto = MockUtils.createAnotherBookingDto();
+    final var changeLogged = new CountDownLatch(1);
+    final var commit = new CountDownLatch(1);
+    final var slowBookingId = new AtomicLong();
+
+    // The change log entry of the slow transaction takes its sequence number, then the commit waits
+    final var slowTransaction = CompletableFuture.runAsync(() -> transaction1.executeWithoutResult(status -> {
+      slowBookingId.set(bookingService1.add(slowBookingDto).getId());
+      // Registered after the listener of the change log
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          changeLogged.countDown();
+          try {
+            assertThat(commit.await(10, TimeUnit.SECONDS)).isTrue();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }));
+    assertThat(changeLogged.await(10, TimeUnit.SECONDS)).isTrue();
+    final var otherBookingId = bookingService1.add(otherBookingDto).getId();
+
+    try {
+      // The gap of the slow transaction is skipped after the gap timeout
+      waitUntil(() -> bookingService2.getAvailabilities(DEFAULT_CAMPSITE_ID, otherBookingDto.getArrivalDate(),
+          otherBookingDto.getDepartureDate()).isEmpty());
+      commit.countDown();
+      slowTransaction.get(10, TimeUnit.SECONDS);
+
+      waitUntil(() -> bookingService2.getAvailabilities(DEFAULT_CAMPSITE_ID, slowBookingDto.getArrivalDate(),
+          slowBookingDto.getDepartureDate()).isEmpty());
+    } finally {
+      commit.countDown();
+      slowTransaction.get(10, TimeUnit.SECONDS);
+      bookingService1.deleteById(DEFAULT_CAMPSITE_ID, slowBookingId.get());
+      bookingService1.deleteById(DEFAULT_CAMPSITE_ID, otherBookingId);
+    }
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+}
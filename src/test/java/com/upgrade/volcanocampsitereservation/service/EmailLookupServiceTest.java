@@ -0,0 +1,164 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Locale;
+import java.util.UUID;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Test the {@link EmailLookupService}.
+ * <p>This test class uses the h2 in-memory database. The cache is shared by the tests of the application context,
+ * so each test uses its own email.</p>
+ */
+@SpringBootTest
+class EmailLookupServiceTest {
+
+  @Autowired
+  private EmailLookupService emailLookupService;
+
+  @Autowired
+  private BookingService bookingService;
+
+  @Autowired
+  private HoldService holdService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @Autowired
+  private BookingDateRepository bookingDateRepository;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  private String email;
+
+  @BeforeEach
+  void setUp() {
+    bookingRepository.deleteAll();
+    bookingDateRepository.deleteAll();
+    availabilityIndex.load();
+    email = UUID.randomUUID() + "@email.com";
+  }
+
+  @Test
+  void findAllByEmail_cached() {
+    final var addedBookingDto = bookingService.add(createBookingDto());
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+    // Deleted without a BookingChangedEvent: the cached result is returned
+    bookingRepository.deleteAll();
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+  }
+
+  @Test
+  void findAllByEmail_copies() {
+    bookingService.add(createBookingDto());
+
+    final var bookingDtos = emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email);
+    bookingDtos.get(0).setFullName("Modified");
+
+    // The cached bookings are not modified by the callers
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getFullName).doesNotContain("Modified");
+  }
+
+  @Test
+  void findAllByEmail_caseInsensitive() {
+    final var addedBookingDto = bookingService.add(createBookingDto());
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email.toUpperCase(Locale.ROOT)))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+  }
+
+  @Test
+  void findAllByEmail_mixedCaseEmail() {
+    final var mixedCaseEmail = "Guest." + email;
+    final var bookingDto = createBookingDto();
+    bookingDto.setEmail(mixedCaseEmail);
+    final var addedBookingDto = bookingService.add(bookingDto);
+
+    // Found with any case, and returned as entered
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, mixedCaseEmail.toLowerCase(Locale.ROOT)))
+        .extracting(BookingDto::getId, BookingDto::getEmail)
+        .containsExactly(tuple(addedBookingDto.getId(), mixedCaseEmail));
+    assertThat(bookingRepository.findById(addedBookingDto.getId())).get()
+        .extracting(BookingDto::getEmail).isEqualTo(mixedCaseEmail);
+  }
+
+  @Test
+  void findAllByEmail_otherCampsite() {
+    bookingService.add(createBookingDto());
+
+    assertThat(emailLookupService.findAllByEmail(2, email)).isEmpty();
+  }
+
+  @Test
+  void add_invalidates() {
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).isEmpty();
+
+    final var addedBookingDto = bookingService.add(createBookingDto());
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+  }
+
+  @Test
+  void update_invalidatesBothEmails() {
+    final var addedBookingDto = bookingService.add(createBookingDto());
+    final var newEmail = UUID.randomUUID() + "@email.com";
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).hasSize(1);
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, newEmail)).isEmpty();
+
+    final var newBookingDto = MockUtils.createAnotherBookingDto();
+    newBookingDto.setEmail(newEmail);
+    final var updatedBookingDto = bookingService.update(addedBookingDto, newBookingDto);
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).isEmpty();
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, newEmail))
+        .extracting(BookingDto::getId).containsExactly(updatedBookingDto.getId());
+  }
+
+  @Test
+  void deleteById_invalidates() {
+    final var addedBookingDto = bookingService.add(createBookingDto());
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).hasSize(1);
+
+    bookingService.deleteById(DEFAULT_CAMPSITE_ID, addedBookingDto.getId());
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).isEmpty();
+  }
+
+  @Test
+  void confirmHold_invalidates() {
+    final var bookingDto = createBookingDto();
+    final var hold = holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email)).isEmpty();
+
+    final var addedBookingDto = holdService.confirm(hold.getId(), bookingDto);
+
+    assertThat(emailLookupService.findAllByEmail(DEFAULT_CAMPSITE_ID, email))
+        .extracting(BookingDto::getId).containsExactly(addedBookingDto.getId());
+  }
+
+  private BookingDto createBookingDto() {
+    final var bookingDto = MockUtils.createBookingDto();
+    bookingDto.setEmail(email);
+    return bookingDto;
+  }
+}
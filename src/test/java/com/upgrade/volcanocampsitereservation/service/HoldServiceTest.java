@@ -0,0 +1,133 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
+import com.upgrade.volcanocampsitereservation.domain.Hold;
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
+import com.upgrade.volcanocampsitereservation.exception.HoldNotFoundException;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.upgrade.volcanocampsitereservation.dto.BookingDto.DEFAULT_CAMPSITE_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test the {@link HoldService}.
+ * <p>This test class uses the h2 in-memory database.</p>
+ */
+@SpringBootTest
+class HoldServiceTest {
+
+  @Autowired
+  private HoldService holdService;
+
+  @Autowired
+  private BookingService bookingService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @Autowired
+  private BookingDateRepository bookingDateRepository;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private ApplicationConfiguration rsvpConfig;
+
+  @BeforeEach
+  void setUp() {
+    bookingRepository.deleteAll();
+    bookingDateRepository.deleteAll();
+    availabilityIndex.load();
+  }
+
+  @Test
+  void hold_unavailable() {
+    final var bookingDto = MockUtils.createBookingDto();
+
+    holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate())).isEmpty();
+    assertThatThrownBy(() -> bookingService.add(bookingDto)).isInstanceOf(BookingConflictException.class);
+    assertThatThrownBy(() -> holdService.hold(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .isInstanceOf(BookingConflictException.class)
+        .hasMessage("Dates " + Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate())
+            + " are not available");
+  }
+
+  @Test
+  void confirm() {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var hold = holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+
+    final var addedBookingDto = holdService.confirm(hold.getId(), bookingDto);
+
+    assertThat(bookingRepository.findById(addedBookingDto.getId())).isPresent();
+    assertThat(bookingDateRepository.findAll()).containsExactlyElementsOf(addedBookingDto.bookingDates());
+    assertThat(bookingService.findOrphanDates()).isEmpty();
+    assertThatThrownBy(() -> holdService.confirm(hold.getId(), MockUtils.createBookingDto()))
+        .isInstanceOf(HoldNotFoundException.class);
+  }
+
+  @Test
+  void confirm_otherDates() {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var hold = holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+
+    assertThatThrownBy(() -> holdService.confirm(hold.getId(), MockUtils.createAnotherBookingDto()))
+        .isInstanceOf(BadRequestException.class);
+    assertThat(bookingRepository.count()).isZero();
+  }
+
+  @Test
+  void release() {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var hold = holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+
+    holdService.release(DEFAULT_CAMPSITE_ID, hold.getId());
+
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .containsExactlyElementsOf(Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate()));
+    assertThatThrownBy(() -> holdService.release(DEFAULT_CAMPSITE_ID, hold.getId()))
+        .isInstanceOf(HoldNotFoundException.class);
+  }
+
+  @Test
+  void expire() throws InterruptedException {
+    final var bookingDto = MockUtils.createBookingDto();
+    final var ttl = rsvpConfig.getHoldTtl();
+    rsvpConfig.setHoldTtl(Duration.ofMillis(200));
+    final Hold hold;
+    try {
+      hold = holdService.hold(DEFAULT_CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+    } finally {
+      rsvpConfig.setHoldTtl(ttl);
+    }
+
+    // Released by the timer, without a sweep
+    for (int i = 0; i < 100 && bookingDateRepository.count() > 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+
+    assertThat(bookingDateRepository.count()).isZero();
+    assertThat(bookingService.getAvailabilities(DEFAULT_CAMPSITE_ID,
+            bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .hasSize(bookingDto.bookingDates().size());
+    assertThatThrownBy(() -> holdService.confirm(hold.getId(), bookingDto)).isInstanceOf(HoldNotFoundException.class);
+  }
+}
@@ -0,0 +1,142 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.repository.IdempotencyKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test the {@link IdempotencyService}.
+ * <p>This test class uses the h2 in-memory database.</p>
+ */
+@SpringBootTest
+class IdempotencyServiceTest {
+
+  private static final String IDEMPOTENCY_KEY = "7c1f0bc2-6ad4-4cb0-9a37-2b0f1e4f4e0e";
+
+  @Autowired
+  private IdempotencyService idempotencyService;
+
+  @SpyBean
+  private BookingService bookingService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @Autowired
+  private BookingDateRepository bookingDateRepository;
+
+  @Autowired
+  private IdempotencyKeyRepository idempotencyKeyRepository;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @BeforeEach
+  void setUp() {
+    idempotencyService.invalidateCache();
+    idempotencyKeyRepository.deleteAll();
+    bookingRepository.deleteAll();
+    bookingDateRepository.deleteAll();
+    availabilityIndex.load();
+  }
+
+  @Test
+  void add_replayed() {
+    final var booking = MockUtils.createValidBooking();
+
+    final var response = idempotencyService.add(IDEMPOTENCY_KEY, booking);
+    final var replayedResponse = idempotencyService.add(IDEMPOTENCY_KEY, booking);
+
+    assertThat(response.isReplayed()).isFalse();
+    assertThat(replayedResponse.isReplayed()).isTrue();
+    assertThat(replayedResponse.getBooking()).isEqualTo(response.getBooking());
+    assertThat(bookingRepository.count()).isEqualTo(1);
+    verify(bookingService, times(1)).add(any(BookingDto.class), any());
+  }
+
+  @Test
+  void add_replayedAfterRestart() {
+    final var booking = MockUtils.createValidBooking();
+    final var response = idempotencyService.add(IDEMPOTENCY_KEY, booking);
+    // The in-memory cache is lost, as after a restart or on another replica
+    idempotencyService.invalidateCache();
+
+    final var replayedResponse = idempotencyService.add(IDEMPOTENCY_KEY, booking);
+
+    assertThat(replayedResponse.isReplayed()).isTrue();
+    assertThat(replayedResponse.getBooking()).isEqualTo(response.getBooking());
+    verify(bookingService, times(1)).add(any(BookingDto.class), any());
+  }
+
+  @Test
+  void add_otherBooking() {
+    idempotencyService.add(IDEMPOTENCY_KEY, MockUtils.createValidBooking());
+    final var otherBooking = MockUtils.createBooking(MockUtils.createValidBooking().getDepartureDate(), 1);
+
+    assertThatThrownBy(() -> idempotencyService.add(IDEMPOTENCY_KEY, otherBooking))
+        .isInstanceOf(BadRequestException.class)
+        .hasMessage("The idempotency key " + IDEMPOTENCY_KEY + " was used for another booking");
+  }
+
+  @Test
+  void add_notStoredOnFailure() {
+    final var booking = MockUtils.createValidBooking();
+    bookingService.add(BookingDto.createFrom(booking));
+
+    assertThatThrownBy(() -> idempotencyService.add(IDEMPOTENCY_KEY, booking))
+        .isInstanceOf(BookingConflictException.class);
+
+    assertThat(idempotencyKeyRepository.existsById(IDEMPOTENCY_KEY)).isFalse();
+  }
+
+  /**
+   * The concurrent requests with the same key wait for the first one, which is slowed down in the transaction.
+   */
+  @Test
+  void add_concurrentDuplicates() throws Exception {
+    final var booking = MockUtils.createValidBooking();
+    doAnswer(invocation -> {
+      TimeUnit.MILLISECONDS.sleep(200);
+      return null;
+    }).when(bookingService).testArtificialDelay();
+    final var executor = Executors.newFixedThreadPool(8);
+    try {
+      final var futures = new ArrayList<Future<IdempotencyService.IdempotentResponse>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit((Callable<IdempotencyService.IdempotentResponse>)
+            () -> idempotencyService.add(IDEMPOTENCY_KEY, booking)));
+      }
+      var replayed = 0;
+      for (var future : futures) {
+        replayed += future.get(10, TimeUnit.SECONDS).isReplayed() ? 1 : 0;
+      }
+      assertThat(replayed).isEqualTo(7);
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(bookingRepository.count()).isEqualTo(1);
+    verify(bookingService, times(1)).add(any(BookingDto.class), any());
+  }
+}
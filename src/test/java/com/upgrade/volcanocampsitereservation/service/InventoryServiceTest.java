@@ -0,0 +1,176 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.domain.BatchBookingResult;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.exception.BadRequestException;
+import com.upgrade.volcanocampsitereservation.exception.BookingConflictException;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingDateRepository;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import com.upgrade.volcanocampsitereservation.repository.DailyInventoryRepository;
+import com.upgrade.volcanocampsitereservation.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test the {@link InventoryService}, with the campsite 3 of 2 pitches (See the test {@code campsite.capacities}).
+ * <p>This test class uses the h2 in-memory database.</p>
+ */
+@SpringBootTest
+class InventoryServiceTest {
+
+  private static final long CAMPSITE_ID = 3;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private BookingService bookingService;
+
+  @Autowired
+  private HoldService holdService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @Autowired
+  private BookingDateRepository bookingDateRepository;
+
+  @Autowired
+  private DailyInventoryRepository dailyInventoryRepository;
+
+  @BeforeEach
+  void setUp() {
+    bookingRepository.deleteAll();
+    bookingDateRepository.deleteAll();
+    dailyInventoryRepository.deleteAll();
+    inventoryService.provision();
+  }
+
+  @Test
+  void add_untilSoldOut() {
+    final var bookingDto = createBookingDto();
+    final var dates = Utils.getDatesBetween(bookingDto.getArrivalDate(), bookingDto.getDepartureDate());
+
+    bookingService.add(createBookingDto());
+    assertThat(bookingService.getAvailabilities(CAMPSITE_ID, dates.get(0), dates.get(dates.size() - 1).plusDays(1)))
+        .containsExactlyElementsOf(dates);
+
+    bookingService.add(createBookingDto());
+    assertThat(bookingService.getAvailabilities(CAMPSITE_ID, dates.get(0), dates.get(dates.size() - 1).plusDays(1)))
+        .isEmpty();
+    assertThatThrownBy(() -> bookingService.add(bookingDto))
+        .isInstanceOf(BookingConflictException.class)
+        .hasMessage("Dates " + dates + " are not available");
+    assertThat(bookingRepository.count()).isEqualTo(2);
+    // The dates of an inventory campsite are counted, not inserted
+    assertThat(bookingDateRepository.count()).isZero();
+  }
+
+  @Test
+  void add_partiallySoldOut() {
+    final var bookingDto = createBookingDto();
+    final var firstDate = bookingDto.getArrivalDate();
+    bookingService.add(createBookingDto(firstDate, 1));
+    bookingService.add(createBookingDto(firstDate, 1));
+
+    assertThatThrownBy(() -> bookingService.add(bookingDto))
+        .isInstanceOf(BookingConflictException.class)
+        .hasMessage("Dates " + List.of(firstDate) + " are not available");
+    // The claim of the other dates was rolled back
+    assertThat(bookingService.getAvailabilities(CAMPSITE_ID, firstDate, bookingDto.getDepartureDate()))
+        .containsExactly(firstDate.plusDays(1));
+  }
+
+  @Test
+  void deleteById_releases() {
+    final var bookingDto = createBookingDto();
+    final var addedBookingDto = bookingService.add(createBookingDto());
+    bookingService.add(createBookingDto());
+
+    bookingService.deleteById(CAMPSITE_ID, addedBookingDto.getId());
+
+    assertThat(bookingService.getAvailabilities(CAMPSITE_ID, bookingDto.getArrivalDate(),
+        bookingDto.getDepartureDate())).hasSize(2);
+    bookingService.add(bookingDto);
+  }
+
+  @Test
+  void update_releasesDroppedDates() {
+    final var addedBookingDto = bookingService.add(createBookingDto());
+    bookingService.add(createBookingDto());
+    final var newBookingDto = MockUtils.createAnotherBookingDto();
+
+    bookingService.update(addedBookingDto, newBookingDto);
+
+    assertThat(bookingService.getAvailabilities(CAMPSITE_ID, addedBookingDto.getArrivalDate(),
+        addedBookingDto.getDepartureDate())).hasSize(2);
+    assertThat(dailyInventoryRepository.findDatesWithRemaining(CAMPSITE_ID,
+        Utils.getDatesBetween(newBookingDto.getArrivalDate(), newBookingDto.getDepartureDate()), 1)).hasSize(2);
+  }
+
+  @Test
+  void addAll_sharesDays() {
+    final var results = bookingService.addAll(CAMPSITE_ID, List.of(createBookingDto(), createBookingDto(),
+        createBookingDto()));
+
+    assertThat(results).extracting(BatchBookingResult::getStatus)
+        .containsExactly(HttpStatus.OK, HttpStatus.OK, HttpStatus.CONFLICT);
+  }
+
+  @Test
+  void add_concurrent() throws Exception {
+    final var executor = Executors.newFixedThreadPool(10);
+    final var added = new AtomicInteger();
+    final var conflicts = new AtomicInteger();
+    IntStream.range(0, 10).forEach(i -> executor.execute(() -> {
+      try {
+        bookingService.add(createBookingDto());
+        added.incrementAndGet();
+      } catch (BookingConflictException e) {
+        conflicts.incrementAndGet();
+      }
+    }));
+    executor.shutdown();
+    assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+    // Exactly the capacity is booked, the counters never go below 0
+    assertThat(added).hasValue(2);
+    assertThat(conflicts).hasValue(8);
+    assertThat(bookingRepository.count()).isEqualTo(2);
+    assertThat(dailyInventoryRepository.findAll()).allMatch(day -> day.getRemaining() >= 0);
+  }
+
+  @Test
+  void hold_unsupported() {
+    final var bookingDto = createBookingDto();
+
+    assertThatThrownBy(() -> holdService.hold(CAMPSITE_ID, bookingDto.getArrivalDate(), bookingDto.getDepartureDate()))
+        .isInstanceOf(BadRequestException.class);
+  }
+
+  private static BookingDto createBookingDto() {
+    final var bookingDto = MockUtils.createBookingDto();
+    bookingDto.setCampsiteId(CAMPSITE_ID);
+    return bookingDto;
+  }
+
+  private static BookingDto createBookingDto(LocalDate arrivalDate, int numberOfDays) {
+    final var bookingDto = MockUtils.createBookingDto(arrivalDate, numberOfDays);
+    bookingDto.setCampsiteId(CAMPSITE_ID);
+    return bookingDto;
+  }
+}
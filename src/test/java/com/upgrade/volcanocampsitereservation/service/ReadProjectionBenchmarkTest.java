@@ -0,0 +1,127 @@
+package com.upgrade.volcanocampsitereservation.service;
+
+import com.upgrade.volcanocampsitereservation.domain.Booking;
+import com.upgrade.volcanocampsitereservation.domain.BookingFilter;
+import com.upgrade.volcanocampsitereservation.dto.BookingDto;
+import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.repository.BookingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the allocations and the latency of a page of bookings read as entities then copied to {@link Booking}
+ * (the previous read path), and read with the constructor expression of {@link BookingRepository#findPage}.
+ * <p>The allocations are measured on the current thread, which executes the whole read. This test class uses the h2
+ * in-memory database.</p>
+ * <p>Tagged {@code benchmark}: excluded from {@code ./gradlew test}, run with {@code ./gradlew benchmark}.</p>
+ */
+@SpringBootTest
+@Tag("benchmark")
+@Slf4j
+class ReadProjectionBenchmarkTest {
+
+  private static final long CAMPSITE_ID = 2;
+
+  private static final int BOOKINGS = 1000;
+
+  private static final int WARMUP_ITERATIONS = 10;
+
+  private static final int ITERATIONS = 30;
+
+  @Autowired
+  private BookingService bookingService;
+
+  @Autowired
+  private BookingRepository bookingRepository;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private TransactionTemplate readOnlyTransaction;
+
+  @Autowired
+  void setTransactionManager(PlatformTransactionManager transactionManager) {
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+  }
+
+  @BeforeEach
+  void setUp() {
+    bookingRepository.deleteAll();
+    // Only the rows of the bookings are read, the dates are not needed
+    bookingRepository.saveAll(IntStream.range(0, BOOKINGS)
+        .mapToObj(i -> {
+          final var bookingDto = MockUtils.createBookingDto(LocalDate.now().plusDays(1 + i % 30), 2);
+          bookingDto.setCampsiteId(CAMPSITE_ID);
+          return bookingDto;
+        })
+        .collect(Collectors.toList()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    bookingRepository.deleteAll();
+  }
+
+  @Test
+  void projection_allocatesLess() {
+    assertThat(readProjections()).containsExactlyElementsOf(readEntities());
+
+    final var entities = measure("Entities", this::readEntities);
+    final var projections = measure("Projections", this::readProjections);
+
+    assertThat(projections).isLessThan(entities);
+  }
+
+  private List<Booking> readEntities() {
+    return readOnlyTransaction.execute(status -> entityManager.createQuery("select b from Booking b"
+            + " where b.campsiteId = :campsiteId order by b.arrivalDate, b.id", BookingDto.class)
+        .setParameter("campsiteId", CAMPSITE_ID)
+        .setMaxResults(BOOKINGS + 1)
+        .getResultList().stream()
+        .map(Booking::createFrom)
+        .collect(Collectors.toList()));
+  }
+
+  private List<Booking> readProjections() {
+    return bookingService.findAll(CAMPSITE_ID, BookingFilter.NONE, null, BOOKINGS).getContent();
+  }
+
+  /**
+   * Returns the bytes allocated per read.
+   */
+  private long measure(String name, Supplier<List<Booking>> read) {
+    final var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      read.get();
+    }
+    final var allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+    final var start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      assertThat(read.get()).hasSize(BOOKINGS);
+    }
+    final var elapsedMicros = (System.nanoTime() - start) / 1000 / ITERATIONS;
+    final var bytesPerRead = (threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBytes) / ITERATIONS;
+    log.info("{}: {} bytes ({} bytes per booking) and {} µs per read of {} bookings", name, bytesPerRead,
+        bytesPerRead / BOOKINGS, elapsedMicros, BOOKINGS);
+    return bytesPerRead;
+  }
+}
@@ -2,6 +2,7 @@ package com.upgrade.volcanocampsitereservation.utils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.upgrade.volcanocampsitereservation.domain.AvailabilityInterval;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -38,4 +39,35 @@ class UtilsTest {
 
     assertThat(localDates).containsAnyElementsOf(expectedOutput);
   }
+
+  private static Stream<Arguments> freeIntervalsSource() {
+    return Stream.of(
+        Arguments.of("2022-01-01", "2022-01-05", List.of(), List.of("2022-01-01/2022-01-05")),
+        Arguments.of("2022-01-01", "2022-01-05", List.of("2022-01-01", "2022-01-02", "2022-01-03", "2022-01-04"),
+            List.of()),
+        Arguments.of("2022-01-01", "2022-01-08", List.of("2022-01-03", "2022-01-04"),
+            List.of("2022-01-01/2022-01-03", "2022-01-05/2022-01-08")),
+        Arguments.of("2022-01-01", "2022-01-08", List.of("2022-01-01", "2022-01-04", "2022-01-07"),
+            List.of("2022-01-02/2022-01-04", "2022-01-05/2022-01-07")),
+        Arguments.of("2022-01-03", "2022-01-01", List.of(), List.of()));
+  }
+
+  @ParameterizedTest
+  @MethodSource("freeIntervalsSource")
+  void freeIntervals(String startInclusive, String endExclusive, List<String> reservedDates, List<String> output) {
+    final var start = LocalDate.parse(startInclusive);
+    final var end = LocalDate.parse(endExclusive);
+    final var expectedOutput = output
+        .stream()
+        .map(interval -> interval.split("/"))
+        .map(interval -> AvailabilityInterval.builder()
+            .start(LocalDate.parse(interval[0]))
+            .endExclusive(LocalDate.parse(interval[1]))
+            .build())
+        .collect(Collectors.toList());
+
+    final var intervals = Utils.getFreeIntervals(start, end, reservedDates.stream().map(LocalDate::parse));
+
+    assertThat(intervals).containsExactlyElementsOf(expectedOutput);
+  }
 }
@@ -1,7 +1,9 @@
 package com.upgrade.volcanocampsitereservation.validation;
 
+import com.upgrade.volcanocampsitereservation.config.ApplicationConfiguration;
 import com.upgrade.volcanocampsitereservation.domain.Booking;
 import com.upgrade.volcanocampsitereservation.mock.MockUtils;
+import com.upgrade.volcanocampsitereservation.service.InventoryService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -10,14 +12,24 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import javax.validation.ConstraintValidatorContext;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -52,4 +64,126 @@ class BookingValidatorTest {
   void testValid() {
     assertThat(bookingValidator.isValid(MockUtils.createValidBooking(), context)).isTrue();
   }
+
+  @Test
+  void testValid_noAllocation() {
+    final var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final var booking = MockUtils.createValidBooking();
+    for (int i = 0; i < 10_000; i++) {
+      bookingValidator.isValid(booking, context);
+    }
+
+    final var allocatedBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 100_000; i++) {
+      bookingValidator.isValid(booking, context);
+    }
+
+    // Less than 1 byte per validation
+    assertThat(threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBytes).isLessThan(100_000);
+  }
+
+  @Test
+  void testRollover() {
+    final var today = LocalDate.of(2022, 4, 14);
+    final var clock = new MutableClock(today.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().minusSeconds(1));
+    final var validator = new BookingValidator(new BookingRuleEngine(createConfiguration(), clock));
+    final var booking = MockUtils.createBooking(today.plusDays(1), 1);
+    assertThat(validator.isValid(booking, context)).isTrue();
+
+    // Midnight: the arrival is today
+    clock.advance(Duration.ofSeconds(1));
+
+    when(context.buildConstraintViolationWithTemplate(any()))
+        .thenReturn(mock(ConstraintValidatorContext.ConstraintViolationBuilder.class));
+    assertThat(validator.isValid(booking, context)).isFalse();
+    verify(context).buildConstraintViolationWithTemplate("The campsite can be reserved minimum 1 day(s) ahead of"
+        + " arrival");
+  }
+
+  @Test
+  void testReload() {
+    final var config = createConfiguration();
+    final var ruleEngine = new BookingRuleEngine(config, Clock.systemDefaultZone());
+    final var validator = new BookingValidator(ruleEngine);
+    final var inventoryService = mock(InventoryService.class);
+    final var endpoint = new BookingRulesEndpoint(config, ruleEngine, inventoryService);
+    final var booking = MockUtils.createTooLongBooking();
+    when(context.buildConstraintViolationWithTemplate(any()))
+        .thenReturn(mock(ConstraintValidatorContext.ConstraintViolationBuilder.class));
+    assertThat(validator.isValid(booking, context)).isFalse();
+    verify(context).buildConstraintViolationWithTemplate("The campsite can be reserved for maximum 3 days");
+
+    final var rules = endpoint.update(4L, null, null);
+
+    assertThat(rules.getMaxReservedDays()).isEqualTo(4);
+    assertThat(rules.getReservationMaxDaysInAdvance()).isEqualTo(31);
+    assertThat(config.getMaxReservedDays()).isEqualTo(4);
+    assertThat(validator.isValid(booking, context)).isTrue();
+    verify(inventoryService).provision();
+  }
+
+  @Test
+  void testRollover_keepsReloadedRules() {
+    final var today = LocalDate.of(2022, 4, 14);
+    final var clock = new MutableClock(today.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().minusSeconds(1));
+    final var config = createConfiguration();
+    final var ruleEngine = new BookingRuleEngine(config, clock);
+    ruleEngine.reload(4, 1, 31);
+    // A change of the configuration in progress is not seen by the rollover
+    config.setMaxReservedDays(5);
+
+    clock.advance(Duration.ofSeconds(1));
+
+    final var rules = ruleEngine.current();
+    assertThat(rules.getToday()).isEqualTo(today.plusDays(1).toEpochDay());
+    assertThat(rules.getMaxReservedDays()).isEqualTo(4);
+    assertThat(ruleEngine.current()).isSameAs(rules);
+  }
+
+  @Test
+  void testReload_invalid() {
+    final var config = createConfiguration();
+    final var endpoint = new BookingRulesEndpoint(config, new BookingRuleEngine(config, Clock.systemDefaultZone()),
+        mock(InventoryService.class));
+
+    assertThatThrownBy(() -> endpoint.update(0L, null, null)).isInstanceOf(InvalidEndpointRequestException.class);
+    assertThatThrownBy(() -> endpoint.update(null, 40L, null)).isInstanceOf(InvalidEndpointRequestException.class);
+    assertThat(config.getMaxReservedDays()).isEqualTo(3);
+  }
+
+  private static ApplicationConfiguration createConfiguration() {
+    final var config = new ApplicationConfiguration();
+    config.setMaxReservedDays(3);
+    config.setMinDaysAheadOfArrival(1);
+    config.setReservationMaxDaysInAdvance(31);
+    return config;
+  }
+
+  private static class MutableClock extends Clock {
+
+    private Instant instant;
+
+    MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
 }
\ No newline at end of file